@@ -0,0 +1,57 @@
+package spaceinvaders;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Putting shots into play and removing them again, compacting the store
+ * after every CHURN_BATCH shots.
+ *
+ * @author Tim Vaughan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ChurnBenchmark {
+
+    /**
+     * Number of shots removed between compactions.
+     */
+    private static final int CHURN_BATCH = 16;
+
+    /**
+     * World the shots are added to and removed from.
+     */
+    private final GameWorld world = new GameWorld();
+
+    /**
+     * Shots put into play so far, and removed since the last compaction.
+     */
+    private int shots, pending;
+
+    /**
+     * @return number of entities stored
+     */
+    @Benchmark
+    public int removeEntity() {
+        EntityStore store = world.getEntityStore();
+        world.removeEntity(world.getShotPool().acquire(shots++ & 511, 300));
+        if (++pending == CHURN_BATCH) {
+            store.compact();
+            pending = 0;
+        }
+        return store.size();
+    }
+}
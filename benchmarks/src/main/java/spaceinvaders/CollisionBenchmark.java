@@ -0,0 +1,71 @@
+package spaceinvaders;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Collision check between a pair of aliens, either overlapping or a
+ * column apart.
+ *
+ * @author Tim Vaughan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CollisionBenchmark {
+
+    /**
+     * True if the aliens should overlap.
+     */
+    @Param({"true", "false"})
+    public boolean overlapping;
+
+    /**
+     * The aliens checked.
+     */
+    private Entity first, second;
+
+    /**
+     * Pick two aliens from the top row of a new game.
+     */
+    @Setup
+    public void setup() {
+        GameWorld world = new GameWorld();
+        EntityStore store = world.getEntityStore();
+        for (int i = 0; i < store.size() && second == null; i++) {
+            Entity entity = store.getEntity(i);
+            if (entity instanceof AlienEntity && ((AlienEntity) entity).getRow() == 0) {
+                if (first == null) {
+                    first = entity;
+                } else {
+                    second = entity;
+                }
+            }
+        }
+        if (overlapping) {
+            second.setLocation(first.getX() + 2, first.getY() + 2);
+        }
+    }
+
+    /**
+     * @return true if the aliens collide
+     */
+    @Benchmark
+    public boolean collidesWith() {
+        return first.collidesWith(second);
+    }
+}
@@ -0,0 +1,102 @@
+package spaceinvaders;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Drawing a sprite into an off-screen image, either from the atlas or
+ * from an image of its own.
+ *
+ * @author Tim Vaughan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+public class DrawBenchmark {
+
+    /**
+     * True to draw from the atlas.
+     */
+    @Param({"true", "false"})
+    public boolean atlas;
+
+    /**
+     * Image drawn into.
+     */
+    private final BufferedImage target = new BufferedImage(800, 600, BufferedImage.TYPE_INT_ARGB);
+
+    /**
+     * Graphics context of the target.
+     */
+    private Graphics2D g;
+
+    /**
+     * Sprite drawn.
+     */
+    private Sprite sprite;
+
+    /**
+     * Number of sprites drawn, used to spread them over the target.
+     */
+    private int drawn;
+
+    /**
+     * Load the sprite, from the atlas or on its own.
+     */
+    @Setup
+    public void setup() {
+        g = target.createGraphics();
+
+        if (atlas) {
+            SpriteStore.get().preload(GameWorld.SPRITES).join();
+            sprite = SpriteStore.get().getSprite(GameWorld.ALIEN_SPRITE);
+            return;
+        }
+
+        URL url = getClass().getClassLoader().getResource(GameWorld.ALIEN_SPRITE);
+        try {
+            BufferedImage image = ImageIO.read(url);
+            sprite = new Sprite(image, new SpriteShape(image));
+        } catch (IOException e) {
+            throw new SpriteLoadException("Failed to load: " + GameWorld.ALIEN_SPRITE, e);
+        }
+    }
+
+    /**
+     * Release the graphics context.
+     */
+    @TearDown
+    public void tearDown() {
+        g.dispose();
+    }
+
+    /**
+     * Draw the sprite once.
+     */
+    @Benchmark
+    public void draw() {
+        int n = drawn++;
+        sprite.draw(g, (n * 37) % 760, (n * 17) % 560);
+    }
+}
@@ -0,0 +1,334 @@
+package spaceinvaders;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * End-to-end benchmarks: whole games played by SweepBot through the same
+ * tick and render path as the real game.  Each operation steps the world
+ * and brings a frame up to date in an off-screen image with a
+ * GameRenderer, and whenever a game ends a new one is started, just as
+ * the player would.
+ * <p>
+ * The workloads are the standard 5x12 wave, a 50x50 stress wave packed
+ * into the same playfield, and the standard wave with the player allowed
+ * to fire every tick.  ticks measures throughput in ticks per second and
+ * tickLatency samples the time per tick, giving its percentiles.
+ * <p>
+ * main() runs the workloads with the GC profiler, so that allocation per
+ * tick is reported too, writes JMH's JSON results and, given a baseline
+ * from an earlier run, checks for regressions, e.g.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar spaceinvaders.MacroBenchmark --out macro.json --baseline baseline.json
+ * </pre>
+ * --results checks an existing results file instead of running the
+ * workloads.  The check fails, with exit status 1, if throughput drops,
+ * or the median or 99th percentile tick time or the allocation per tick
+ * rises, by more than --tolerance (a fraction, 0.15 by default).
+ *
+ * @author Tim Vaughan
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class MacroBenchmark {
+
+    /**
+     * Length of one step (ms), as in the real game.
+     */
+    private static final double TICK_LENGTH = 1000.0 / 60;
+
+    /**
+     * Default fraction by which a result may be worse than the baseline.
+     */
+    private static final double DEFAULT_TOLERANCE = 0.15;
+
+    /**
+     * Allocation per tick which is never counted as a regression (bytes),
+     * as there is always a little noise from the JVM itself.
+     */
+    private static final double ALLOCATION_SLACK = 64;
+
+    /**
+     * Name of JMH's secondary metric for allocation per operation.
+     */
+    private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+
+    /**
+     * Percentiles of tick time checked against the baseline.
+     */
+    private static final String[] PERCENTILES = {"50.0", "99.0"};
+
+    /**
+     * Workload played.
+     */
+    @Param({"wave/5x12", "wave/50x50", "fireEveryTick/5x12"})
+    public String workload;
+
+    /**
+     * World being played.
+     */
+    private GameWorld world;
+
+    /**
+     * Renderer drawing the world.
+     */
+    private GameRenderer renderer;
+
+    /**
+     * Image the frames are drawn into.
+     */
+    private BufferedImage frame;
+
+    /**
+     * @param name name of a workload
+     * @return settings of the game played by the workload
+     */
+    static GameConfig config(String name) {
+        GameConfig config = new GameConfig();
+        switch (name) {
+            case "wave/5x12":
+                break;
+            case "wave/50x50":
+                config.setAliens(50, 50);
+                config.setAlienSpacing(13, 8);
+                break;
+            case "fireEveryTick/5x12":
+                config.setFiringInterval(0);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown workload " + name);
+        }
+        return config;
+    }
+
+    /**
+     * Start the workload's game.
+     */
+    @Setup
+    public void setup() {
+        SpriteStore.get().preload(GameWorld.SPRITES).join();
+
+        world = new GameWorld(config(workload));
+        renderer = new GameRenderer(world);
+        frame = new BufferedImage(world.getWidth(), world.getHeight(), BufferedImage.TYPE_INT_RGB);
+    }
+
+    /**
+     * Play one tick, starting a new game first if the last one is over.
+     *
+     * @return number of steps taken in the current game
+     */
+    private int tick() {
+        if (world.isGameOverConditionMet()) {
+            world.reset();
+            renderer.redrawAll();
+        }
+        world.step(TICK_LENGTH, SweepBot.input(world.getIterations()));
+        renderer.render(frame, 1.0, GameRenderer.OVERLAY_NONE);
+        return world.getIterations();
+    }
+
+    /**
+     * @return number of steps taken in the current game
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int ticks() {
+        return tick();
+    }
+
+    /**
+     * @return number of steps taken in the current game
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int tickLatency() {
+        return tick();
+    }
+
+    /**
+     * Read a JMH results file.
+     *
+     * @param path the file
+     * @return each result, keyed by benchmark, mode and parameters
+     * @throws IOException if the file can't be read
+     */
+    static Map<String, JsonObject> readResults(Path path) throws IOException {
+        JsonArray array;
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            array = JsonParser.parseReader(reader).getAsJsonArray();
+        }
+
+        Map<String, JsonObject> results = new LinkedHashMap<String, JsonObject>();
+        for (JsonElement element : array) {
+            JsonObject result = element.getAsJsonObject();
+            String benchmark = result.get("benchmark").getAsString();
+            String key = benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1)
+                    + " " + result.get("mode").getAsString();
+            if (result.has("params")) {
+                key += " " + result.get("params");
+            }
+            results.put(key, result);
+        }
+        return results;
+    }
+
+    /**
+     * Compare results with a baseline, printing each comparison.
+     *
+     * @param results results of this run
+     * @param baseline earlier results to compare with
+     * @param tolerance fraction by which a result may be worse
+     * @return number of regressions found
+     */
+    static int compare(Map<String, JsonObject> results, Map<String, JsonObject> baseline, double tolerance) {
+        int regressions = 0;
+        for (Map.Entry<String, JsonObject> entry : results.entrySet()) {
+            String name = entry.getKey();
+            JsonObject result = entry.getValue(), base = baseline.get(name);
+            if (base == null) {
+                System.out.println(name + ": not in baseline");
+                continue;
+            }
+
+            JsonObject metric = result.getAsJsonObject("primaryMetric");
+            JsonObject baseMetric = base.getAsJsonObject("primaryMetric");
+            String unit = metric.get("scoreUnit").getAsString();
+            if (result.get("mode").getAsString().equals("thrpt")) {
+                double baseScore = baseMetric.get("score").getAsDouble();
+                if (check(name, unit, metric.get("score").getAsDouble(), baseScore,
+                        baseScore * (1 - tolerance), false)) {
+                    regressions++;
+                }
+            } else if (metric.has("scorePercentiles") && baseMetric.has("scorePercentiles")) {
+                for (String percentile : PERCENTILES) {
+                    double baseScore = baseMetric.getAsJsonObject("scorePercentiles").get(percentile).getAsDouble();
+                    double score = metric.getAsJsonObject("scorePercentiles").get(percentile).getAsDouble();
+                    if (check(name, "p" + percentile + " " + unit, score, baseScore,
+                            baseScore * (1 + tolerance), true)) {
+                        regressions++;
+                    }
+                }
+            }
+
+            JsonObject allocation = secondaryMetric(result, ALLOCATION_METRIC);
+            JsonObject baseAllocation = secondaryMetric(base, ALLOCATION_METRIC);
+            if (allocation != null && baseAllocation != null) {
+                double baseScore = baseAllocation.get("score").getAsDouble();
+                if (check(name, allocation.get("scoreUnit").getAsString(), allocation.get("score").getAsDouble(),
+                        baseScore, baseScore * (1 + tolerance) + ALLOCATION_SLACK, true)) {
+                    regressions++;
+                }
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * @param result a JMH result
+     * @param name name of a secondary metric
+     * @return the metric, or null if the result doesn't have it
+     */
+    private static JsonObject secondaryMetric(JsonObject result, String name) {
+        JsonObject metrics = result.getAsJsonObject("secondaryMetrics");
+        return metrics != null && metrics.has(name) ? metrics.getAsJsonObject(name) : null;
+    }
+
+    /**
+     * Check and print one measurement against its baseline.
+     *
+     * @param name name of the result
+     * @param measure what was measured
+     * @param value the measurement
+     * @param base the baseline measurement
+     * @param limit worst acceptable measurement
+     * @param lowerIsBetter true if the measurement should stay below the limit
+     * @return true if the measurement is worse than the limit
+     */
+    private static boolean check(String name, String measure, double value, double base, double limit,
+            boolean lowerIsBetter) {
+        boolean regressed = lowerIsBetter ? value > limit : value < limit;
+        System.out.printf("%-60s %-12s %12.1f baseline %12.1f limit %12.1f %s%n",
+                name, measure, value, base, limit, regressed ? "REGRESSED" : "ok");
+        return regressed;
+    }
+
+    /**
+     * Run the workloads and check them against a baseline.
+     *
+     * @param args [--out file] [--results file] [--baseline file]
+     * [--tolerance fraction]
+     * @throws IOException if the results or baseline can't be read
+     * @throws RunnerException if the workloads can't be run
+     */
+    public static void main(String[] args) throws IOException, RunnerException {
+        String out = "macro.json", resultsFile = null, baselineFile = null;
+        double tolerance = DEFAULT_TOLERANCE;
+        for (int n = 0; n < args.length; n++) {
+            if (n + 1 < args.length && args[n].equals("--out")) {
+                out = args[++n];
+            } else if (n + 1 < args.length && args[n].equals("--results")) {
+                resultsFile = args[++n];
+            } else if (n + 1 < args.length && args[n].equals("--baseline")) {
+                baselineFile = args[++n];
+            } else if (n + 1 < args.length && args[n].equals("--tolerance")) {
+                tolerance = Double.parseDouble(args[++n]);
+            } else {
+                System.err.println("Usage: java spaceinvaders.MacroBenchmark [--out file] [--results file]"
+                        + " [--baseline file] [--tolerance fraction]");
+                System.exit(2);
+            }
+        }
+
+        // read the baseline first, so a bad one is reported straight away
+        Map<String, JsonObject> baseline = baselineFile != null ? readResults(Paths.get(baselineFile)) : null;
+
+        if (resultsFile == null) {
+            new Runner(new OptionsBuilder()
+                    .include(MacroBenchmark.class.getName() + "\\.")
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(out)
+                    .build()).run();
+            resultsFile = out;
+        }
+
+        if (baseline != null && compare(readResults(Paths.get(resultsFile)), baseline, tolerance) > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package spaceinvaders;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Looking up a sprite which is cached, or loading one which isn't.
+ *
+ * @author Tim Vaughan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SpriteBenchmark {
+
+    /**
+     * Load the game's sprites.
+     */
+    @Setup
+    public void setup() {
+        SpriteStore.get().preload(GameWorld.SPRITES).join();
+    }
+
+    /**
+     * @return the sprite found
+     */
+    @Benchmark
+    public Sprite getSpriteHit() {
+        return SpriteStore.get().getSprite(GameWorld.SHOT_SPRITE);
+    }
+
+    /**
+     * @return the sprite loaded
+     */
+    @Benchmark
+    public Sprite getSpriteMiss() {
+        SpriteStore store = SpriteStore.get();
+        store.evict(GameWorld.SHOT_SPRITE);
+        return store.getSpriteAsync(GameWorld.SHOT_SPRITE).join();
+    }
+}
@@ -0,0 +1,127 @@
+package spaceinvaders;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Whole game steps, and entity movement alone, with a given number of
+ * aliens left.
+ * <p>
+ * Each trial starts from a snapshot of a game played by SweepBot down to
+ * that number of aliens, and restores it every RESTORE_TICKS steps so
+ * that the number of entities stays close to the parameter.  The cost
+ * of restoring is spread over those steps.
+ *
+ * @author Tim Vaughan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class StepBenchmark {
+
+    /**
+     * Game time per step in milliseconds.
+     */
+    static final double TICK_LENGTH = 100;
+
+    /**
+     * Number of steps taken from the snapshot before it is restored.
+     */
+    private static final int RESTORE_TICKS = 64;
+
+    /**
+     * Number of aliens left when the snapshot is taken.
+     */
+    @Param({"60", "30", "5"})
+    public int aliens;
+
+    /**
+     * World being stepped.
+     */
+    private final GameWorld world = new GameWorld();
+
+    /**
+     * Snapshot restored every RESTORE_TICKS steps.
+     */
+    private final WorldSnapshot snapshot = new WorldSnapshot();
+
+    /**
+     * Tick at which the snapshot was taken, and steps taken since.
+     */
+    private int start, steps;
+
+    /**
+     * Play a game with SweepBot until no more than a given number of
+     * aliens are left.
+     *
+     * @param world world to play in, which is reset first
+     * @param aliens number of aliens to play down to
+     * @return number of steps taken
+     */
+    static int playUntil(GameWorld world, int aliens) {
+        world.reset();
+        int tick = 0;
+        while (world.getAlienCount() > aliens) {
+            if (world.isGameOverConditionMet()) {
+                throw new IllegalStateException("game ended with " + world.getAlienCount() + " aliens left");
+            }
+            world.step(TICK_LENGTH, SweepBot.input(tick++));
+        }
+        return tick;
+    }
+
+    /**
+     * Play down to the number of aliens being measured.
+     */
+    @Setup
+    public void setup() {
+        start = playUntil(world, aliens);
+        snapshot.capture(world);
+    }
+
+    /**
+     * Restore the snapshot if enough steps have been taken since it was
+     * last restored, or the game has ended.
+     */
+    private void restoreIfDue() {
+        if (steps == RESTORE_TICKS || world.isGameOverConditionMet()) {
+            snapshot.restore(world);
+            steps = 0;
+        }
+    }
+
+    /**
+     * @return number of steps the world has taken
+     */
+    @Benchmark
+    public int step() {
+        restoreIfDue();
+        world.step(TICK_LENGTH, SweepBot.input(start + steps++));
+        return world.getIterations();
+    }
+
+    /**
+     * @return number of entities moved
+     */
+    @Benchmark
+    public int move() {
+        restoreIfDue();
+        steps++;
+        world.moveEntities(TICK_LENGTH);
+        return world.getEntityStore().size();
+    }
+}
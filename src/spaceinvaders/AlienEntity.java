@@ -2,66 +2,108 @@ package spaceinvaders;
 
 /**
  * An entity which represents one of our space invader aliens.
+ * Aliens don't move themselves, each occupies a cell of an
+ * AlienFormation which moves the whole block at once.
  * 
  * @author Kevin Glass
  */
 public class AlienEntity extends Entity {
-	/** The speed at which the alient moves horizontally */
-	private double moveSpeed = 75;
-	/** The game in which the entity exists */
-	private GamePanel game;
+	/** The formation this alien belongs to */
+	private final AlienFormation formation;
+	/** The row of the formation this alien occupies */
+	private final int row;
+	/** The column of the formation this alien occupies */
+	private final int column;
 	
 	/**
-	 * Create a new alien entity
+	 * Create a new alien entity in a cell of a formation
 	 * 
 	 * @param game The game in which this entity is being created
+	 * @param formation The formation this alien belongs to
 	 * @param ref The sprite which should be displayed for this alien
+	 * @param row The row of the formation this alien occupies
+	 * @param column The column of the formation this alien occupies
 	 * @param x The intial x location of this alien
 	 * @param y The intial y location of this alient
 	 */
-	public AlienEntity(GamePanel game,String ref,int x,int y) {
-		super(ref,x,y);
+	public AlienEntity(GameWorld game,AlienFormation formation,String ref,int row,int column,int x,int y) {
+		super(game.getEntityStore(),TYPE_ALIEN,ref,x,y);
 		
-		this.game = game;
-		dx = -moveSpeed;
+		this.formation = formation;
+		this.row = row;
+		this.column = column;
+		
+		join();
 	}
-
+	
 	/**
-	 * Request that this alien moved based on time elapsed
+	 * Bring this alien back into the game, in its cell of the formation,
+	 * once it has been removed
 	 * 
-	 * @param delta The time that has elapsed since last move
+	 * @param x The new x location of this alien
+	 * @param y The new y location of this alien
 	 */
-	public void move(long delta) {
-		// if we have reached the left hand side of the screen and
-		// are moving left then request a logic update 
-		if ((dx < 0) && (x < 10)) {
-			game.updateLogic();
-		}
-		// and vice vesa, if we have reached the right hand side of 
-		// the screen and are moving right, request a logic update
-		if ((dx > 0) && (x > 750)) {
-			game.updateLogic();
-		}
+	void respawn(int x,int y) {
+		spawn(x,y);
 		
-		// proceed with normal move
-		super.move(delta);
+		join();
 	}
 	
 	/**
-	 * Update the game logic related to aliens
+	 * Take up this alien's cell of the formation
 	 */
-    @Override
-	public void doLogic() {
-		// swap over horizontal movement and move down the
-		// screen a bit
-		dx = -dx;
-		y += 10;
+	private void join() {
+		formation.addMember(this,row,column);
 		
-		// if we've reached the bottom of the screen then the player
-		// dies
-		if (y > game.getHeight()-30) {
-			game.notifyHumansDead();
-		}
+		// aliens don't go looking for collisions, ships and shots
+		// come looking for them
+		setCollision(LAYER_ALIEN,0);
+	}
+	
+	/**
+	 * Get the formation this alien belongs to
+	 * 
+	 * @return The formation
+	 */
+	public AlienFormation getFormation() {
+		return formation;
+	}
+	
+	/**
+	 * Get the row of the formation this alien occupies
+	 * 
+	 * @return The row
+	 */
+	public int getRow() {
+		return row;
+	}
+	
+	/**
+	 * Get the column of the formation this alien occupies
+	 * 
+	 * @return The column
+	 */
+	public int getColumn() {
+		return column;
+	}
+
+	/**
+	 * Get the horizontal speed of this alien, which is that of its
+	 * formation
+	 * 
+	 * @return The horizontal speed of this alien (pixels/sec)
+	 */
+    @Override
+	public double getHorizontalMovement() {
+		return formation.getHorizontalMovement();
+	}
+	
+	/**
+	 * Notification that this alien has been removed from the game
+	 */
+    @Override
+	protected void removed() {
+		formation.memberRemoved(row,column);
 	}
 	
 	/**
@@ -73,4 +115,4 @@ public class AlienEntity extends Entity {
 	public void collidedWith(Entity other) {
 		// collisions with aliens are handled elsewhere
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,422 @@
+package spaceinvaders;
+
+import java.util.Arrays;
+
+/**
+ * A block of aliens laid out on a regular grid, which moves as one.
+ *
+ * The formation owns everything the aliens have in common: the position
+ * of the grid's origin, its horizontal speed and the bounding box of the
+ * surviving aliens.  Each alien is just a cell of the grid, so its
+ * position is the origin plus a fixed offset.  This means reaching the
+ * edge of the screen, turning around, speeding up and dropping down a row
+ * each cost the same no matter how many aliens are left, rather than
+ * requiring a visit to every alien.
+ *
+ * The bounding box is kept up to date from counts of the surviving aliens
+ * in each row and column, and which cells are still occupied is recorded
+ * in a bitmap.  Together with the regular layout this lets the formation
+ * work out which aliens a shot might be hitting directly from the shot's
+ * position, see findCandidates().
+ *
+ * @author Tim Vaughan
+ */
+public class AlienFormation {
+
+    /**
+     * The game in which the formation exists.
+     */
+    private final GameWorld game;
+
+    /**
+     * Position of the formation among those of its game.
+     */
+    private final int index;
+
+    /**
+     * Number of rows and columns in the grid.
+     */
+    private final int rows, columns;
+
+    /**
+     * Distance between neighbouring aliens horizontally and vertically.
+     */
+    private final double spacingX, spacingY;
+
+    /**
+     * The alien occupying each cell (row-major), or null.
+     */
+    private final AlienEntity[] members;
+
+    /**
+     * Bitmap of occupied cells (row-major).
+     */
+    private final long[] liveBits;
+
+    /**
+     * Number of surviving aliens in each row and column.
+     */
+    private final int[] rowCounts, columnCounts;
+
+    /**
+     * Size of the largest alien in the formation.
+     */
+    private int cellWidth, cellHeight;
+
+    /**
+     * Number of surviving aliens.
+     */
+    private int liveCount;
+
+    /**
+     * First and last column, and last row, containing a surviving alien.
+     */
+    private int firstColumn, lastColumn, lastRow;
+
+    /**
+     * Position of the top left cell of the grid.
+     */
+    private double originX, originY;
+
+    /**
+     * Horizontal speed of the formation (pixels/sec).
+     */
+    private double dx;
+
+    /**
+     * True once the formation has reached the edge of the screen, until
+     * it turns around.
+     */
+    private boolean turnRequired;
+
+    /**
+     * Create an empty formation.
+     *
+     * @param game The game in which the formation exists
+     * @param index Position of the formation among those of its game
+     * @param rows Number of rows of aliens
+     * @param columns Number of aliens in each row
+     * @param spacingX Horizontal distance between aliens
+     * @param spacingY Vertical distance between rows
+     */
+    public AlienFormation(GameWorld game, int index, int rows, int columns, double spacingX, double spacingY) {
+        this.game = game;
+        this.index = index;
+        this.rows = rows;
+        this.columns = columns;
+        this.spacingX = spacingX;
+        this.spacingY = spacingY;
+
+        members = new AlienEntity[rows * columns];
+        liveBits = new long[(rows * columns + 63) / 64];
+        rowCounts = new int[rows];
+        columnCounts = new int[columns];
+    }
+
+    /**
+     * Empty the formation and move it to its starting position.  Aliens
+     * are then added with addMember().
+     *
+     * @param x Initial x location of the top left cell
+     * @param y Initial y location of the top left cell
+     * @param speed Initial horizontal speed (pixels/sec)
+     */
+    public void reset(double x, double y, double speed) {
+        reset(x, y, speed, false);
+    }
+
+    /**
+     * Empty the formation and move it to a given position, e.g. one saved
+     * in a snapshot.  Aliens are then added with addMember().
+     *
+     * @param x Initial x location of the top left cell
+     * @param y Initial y location of the top left cell
+     * @param speed Initial horizontal speed (pixels/sec)
+     * @param turning True if the formation has reached the edge of the
+     * screen and is due to turn around
+     */
+    public void reset(double x, double y, double speed, boolean turning) {
+        Arrays.fill(members, null);
+        Arrays.fill(liveBits, 0);
+        Arrays.fill(rowCounts, 0);
+        Arrays.fill(columnCounts, 0);
+        liveCount = 0;
+        cellWidth = 0;
+        cellHeight = 0;
+        firstColumn = columns;
+        lastColumn = -1;
+        lastRow = -1;
+
+        originX = x;
+        originY = y;
+        dx = speed;
+        turnRequired = turning;
+    }
+
+    /**
+     * Place an alien in a cell of the grid.
+     *
+     * @param alien The alien
+     * @param row Row of the cell
+     * @param column Column of the cell
+     */
+    void addMember(AlienEntity alien, int row, int column) {
+        int cell = row * columns + column;
+        members[cell] = alien;
+        liveBits[cell >>> 6] |= 1L << cell;
+
+        rowCounts[row]++;
+        columnCounts[column]++;
+        liveCount++;
+
+        cellWidth = Math.max(cellWidth, alien.getWidth());
+        cellHeight = Math.max(cellHeight, alien.getHeight());
+
+        firstColumn = Math.min(firstColumn, column);
+        lastColumn = Math.max(lastColumn, column);
+        lastRow = Math.max(lastRow, row);
+    }
+
+    /**
+     * Notification that the alien in a cell has been removed from the
+     * game.  Shrinks the bounding box if that was the last alien in an
+     * outer row or column.
+     *
+     * @param row Row of the cell
+     * @param column Column of the cell
+     */
+    void memberRemoved(int row, int column) {
+        int cell = row * columns + column;
+        if (members[cell] == null) {
+            return;
+        }
+
+        members[cell] = null;
+        liveBits[cell >>> 6] &= ~(1L << cell);
+
+        rowCounts[row]--;
+        columnCounts[column]--;
+        liveCount--;
+
+        while (firstColumn < columns && columnCounts[firstColumn] == 0) {
+            firstColumn++;
+        }
+        while (lastColumn >= 0 && columnCounts[lastColumn] == 0) {
+            lastColumn--;
+        }
+        while (lastRow >= 0 && rowCounts[lastRow] == 0) {
+            lastRow--;
+        }
+    }
+
+    /**
+     * Move the formation based on time elapsed.  If the surviving aliens
+     * have reached the edge of the screen they are moving towards a logic
+     * update is requested, which turns the formation around.  Other
+     * formations in the same game carry on as they are.
+     *
+     * @param delta The time that has elapsed since last move (ms)
+     */
+    public void move(double delta) {
+        if (liveCount == 0) {
+            return;
+        }
+
+        if ((dx < 0 && getLeft() < 10) || (dx > 0 && getRight() > game.getWidth() - 50)) {
+            turnRequired = true;
+            game.updateLogic();
+        }
+
+        originX += (delta * dx) / 1000;
+    }
+
+    /**
+     * Write the position of every surviving alien into the entity store.
+     *
+     * @param store The store holding the aliens
+     */
+    public void place(EntityStore store) {
+        double[] x = store.x, y = store.y;
+
+        for (int row = 0; row <= lastRow; row++) {
+            if (rowCounts[row] == 0) {
+                continue;
+            }
+
+            double rowY = originY + row * spacingY;
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                AlienEntity alien = members[row * columns + column];
+                if (alien != null) {
+                    x[alien.index] = originX + column * spacingX;
+                    y[alien.index] = rowY;
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the surviving aliens whose bounding box may overlap that of an
+     * entity, and add them to a collision grid as candidate pairs.  The
+     * rows and columns which could be involved are calculated from the
+     * entity's position relative to the origin, so the cost doesn't
+     * depend on the size of the formation.  The candidates are a superset
+     * of the aliens actually overlapped, which takes care of rounding.
+     *
+     * @param index Index of the entity in the entity store
+     * @param x Left edge of the entity's bounding box
+     * @param y Top edge of the entity's bounding box
+     * @param width Width of the entity's bounding box
+     * @param height Height of the entity's bounding box
+     * @param grid Grid to add candidate pairs to
+     */
+    public void findCandidates(int index, int x, int y, int width, int height, CollisionGrid grid) {
+        if (liveCount == 0) {
+            return;
+        }
+
+        // aliens are drawn at whole pixel positions, so allow an extra
+        // pixel either side
+        int c0 = Math.max(firstColumn, (int) Math.floor((x - cellWidth - originX) / spacingX));
+        int c1 = Math.min(lastColumn, (int) Math.floor((x + width + 1 - originX) / spacingX));
+        int r0 = Math.max(0, (int) Math.floor((y - cellHeight - originY) / spacingY));
+        int r1 = Math.min(lastRow, (int) Math.floor((y + height + 1 - originY) / spacingY));
+
+        for (int row = r0; row <= r1; row++) {
+            for (int column = c0; column <= c1; column++) {
+                if (isOccupied(row, column)) {
+                    grid.addPair(index, members[row * columns + column].index);
+                }
+            }
+        }
+    }
+
+    /**
+     * If the formation has reached the edge of the screen, swap over
+     * horizontal movement and move down the screen a bit.  If the bottom
+     * row has reached the bottom of the screen then the player dies.
+     */
+    public void doLogic() {
+        if (!turnRequired) {
+            return;
+        }
+        turnRequired = false;
+
+        dx = -dx;
+        originY += 10;
+
+        if (liveCount > 0 && getBottom() > game.getHeight() - 30) {
+            game.notifyHumansDead();
+        }
+    }
+
+    /**
+     * Speed up the formation.
+     *
+     * @param factor Factor to multiply horizontal speed by
+     */
+    public void speedUp(double factor) {
+        dx *= factor;
+    }
+
+    /**
+     * @return horizontal speed of the formation (pixels/sec)
+     */
+    public double getHorizontalMovement() {
+        return dx;
+    }
+
+    /**
+     * @return x location of the leftmost surviving alien
+     */
+    public double getLeft() {
+        return originX + firstColumn * spacingX;
+    }
+
+    /**
+     * @return x location of the rightmost surviving alien
+     */
+    public double getRight() {
+        return originX + lastColumn * spacingX;
+    }
+
+    /**
+     * @return y location of the lowest surviving alien
+     */
+    public double getBottom() {
+        return originY + lastRow * spacingY;
+    }
+
+    /**
+     * @return position of the formation among those of its game
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return number of rows in the grid
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return number of columns in the grid
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return true if the formation has reached the edge of the screen
+     * and is due to turn around
+     */
+    public boolean isTurning() {
+        return turnRequired;
+    }
+
+    /**
+     * @return horizontal distance between aliens
+     */
+    public double getSpacingX() {
+        return spacingX;
+    }
+
+    /**
+     * @return vertical distance between rows
+     */
+    public double getSpacingY() {
+        return spacingY;
+    }
+
+    /**
+     * @return x location of the top left cell
+     */
+    public double getX() {
+        return originX;
+    }
+
+    /**
+     * @return y location of the top left cell
+     */
+    public double getY() {
+        return originY;
+    }
+
+    /**
+     * @return number of surviving aliens
+     */
+    public int getLiveCount() {
+        return liveCount;
+    }
+
+    /**
+     * @param row Row of the cell
+     * @param column Column of the cell
+     * @return true if the cell holds a surviving alien
+     */
+    public boolean isOccupied(int row, int column) {
+        int cell = row * columns + column;
+        return (liveBits[cell >>> 6] & (1L << cell)) != 0;
+    }
+}
@@ -0,0 +1,394 @@
+package spaceinvaders;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Plays large numbers of independent headless games in parallel, e.g. to
+ * see how a change to the rules affects difficulty.  Each game is played
+ * by a RandomBot seeded from the game's number, so a batch gives the same
+ * results however many threads it is spread over.
+ * <p>
+ * Games are split between the threads of a ForkJoinPool, with each leaf
+ * task reusing a single world for all its games, so nothing is shared
+ * between threads and throughput grows with the number of cores.  The
+ * results are combined into a Summary of scores, ticks survived and wins
+ * and losses.
+ * <p>
+ * Run headless, e.g.
+ * <pre>
+ * java -Djava.awt.headless=true spaceinvaders.BatchRunner --games 100000 --seed 1 --csv games.csv
+ * </pre>
+ * Besides the game settings understood by GameConfig.setOption(), the
+ * options are:
+ * <pre>
+ * --games N            number of games to play (10000)
+ * --seed S             seed of the first game, the rest follow on (0)
+ * --threads N          number of threads (one per core)
+ * --max-ticks N        ticks after which an unfinished game is lost (100000)
+ * --csv FILE           also write seed, score, ticks and outcome per game
+ * </pre>
+ *
+ * @author Tim Vaughan
+ */
+public class BatchRunner {
+
+    /**
+     * Outcome of one game.
+     */
+    public static class Result {
+
+        /**
+         * Seed the game was played with.
+         */
+        public final long seed;
+
+        /**
+         * Final score.
+         */
+        public final int score;
+
+        /**
+         * Number of ticks the game lasted.
+         */
+        public final int ticks;
+
+        /**
+         * True if the player won.
+         */
+        public final boolean won;
+
+        /**
+         * Create a result.
+         *
+         * @param seed seed the game was played with
+         * @param score final score
+         * @param ticks number of ticks the game lasted
+         * @param won true if the player won
+         */
+        public Result(long seed, int score, int ticks, boolean won) {
+            this.seed = seed;
+            this.score = score;
+            this.ticks = ticks;
+            this.won = won;
+        }
+    }
+
+    /**
+     * Totals over a number of games.
+     */
+    public static class Summary {
+
+        /**
+         * Number of games, and of those won.
+         */
+        private long games, wins;
+
+        /**
+         * Sums of scores and of ticks survived.
+         */
+        private long scoreTotal, tickTotal;
+
+        /**
+         * Lowest and highest score.
+         */
+        private int minScore = Integer.MAX_VALUE, maxScore = Integer.MIN_VALUE;
+
+        /**
+         * Fewest and most ticks survived.
+         */
+        private int minTicks = Integer.MAX_VALUE, maxTicks = Integer.MIN_VALUE;
+
+        /**
+         * Add a game.
+         *
+         * @param result outcome of the game
+         */
+        public void add(Result result) {
+            games++;
+            wins += result.won ? 1 : 0;
+            scoreTotal += result.score;
+            tickTotal += result.ticks;
+            minScore = Math.min(minScore, result.score);
+            maxScore = Math.max(maxScore, result.score);
+            minTicks = Math.min(minTicks, result.ticks);
+            maxTicks = Math.max(maxTicks, result.ticks);
+        }
+
+        /**
+         * Add the games of another summary.
+         *
+         * @param other the other summary
+         */
+        public void add(Summary other) {
+            games += other.games;
+            wins += other.wins;
+            scoreTotal += other.scoreTotal;
+            tickTotal += other.tickTotal;
+            minScore = Math.min(minScore, other.minScore);
+            maxScore = Math.max(maxScore, other.maxScore);
+            minTicks = Math.min(minTicks, other.minTicks);
+            maxTicks = Math.max(maxTicks, other.maxTicks);
+        }
+
+        /**
+         * @return number of games
+         */
+        public long getGames() {
+            return games;
+        }
+
+        /**
+         * @return number of games won
+         */
+        public long getWins() {
+            return wins;
+        }
+
+        /**
+         * @return total number of ticks played
+         */
+        public long getTicks() {
+            return tickTotal;
+        }
+
+        /**
+         * @return mean score
+         */
+        public double getMeanScore() {
+            return games > 0 ? (double) scoreTotal / games : Double.NaN;
+        }
+
+        /**
+         * @return mean number of ticks survived
+         */
+        public double getMeanTicks() {
+            return games > 0 ? (double) tickTotal / games : Double.NaN;
+        }
+
+        @Override
+        public String toString() {
+            if (games == 0) {
+                return "no games";
+            }
+            return String.format("%d games, %d won (%.1f%%), %d lost; score mean %.1f min %d max %d;"
+                    + " ticks mean %.1f min %d max %d",
+                    games, wins, 100.0 * wins / games, games - wins,
+                    getMeanScore(), minScore, maxScore, getMeanTicks(), minTicks, maxTicks);
+        }
+    }
+
+    /**
+     * Largest number of games played by a single task.
+     */
+    private static final int GAMES_PER_TASK = 16;
+
+    /**
+     * Settings of the games played.
+     */
+    private final GameConfig config;
+
+    /**
+     * Length of each tick (ms).
+     */
+    private final double tickLength;
+
+    /**
+     * Ticks after which an unfinished game counts as lost.
+     */
+    private final int maxTicks;
+
+    /**
+     * Create a runner.
+     *
+     * @param config settings of the games played, copied by each world
+     * @param tickLength length of each tick (ms)
+     * @param maxTicks ticks after which an unfinished game counts as lost
+     */
+    public BatchRunner(GameConfig config, double tickLength, int maxTicks) {
+        this.config = config;
+        this.tickLength = tickLength;
+        this.maxTicks = maxTicks;
+    }
+
+    /**
+     * Play one game.
+     *
+     * @param world world to play in, which is reset first
+     * @param bot bot to play with, which is reseeded first
+     * @param seed seed of the game
+     * @return the outcome
+     */
+    public Result play(GameWorld world, RandomBot bot, long seed) {
+        world.reset();
+        bot.reset(seed);
+
+        while (!world.isGameOverConditionMet() && world.getIterations() < maxTicks) {
+            world.step(tickLength, bot.nextInput());
+        }
+
+        boolean won = world.isGameOverConditionMet() && world.isGameWon();
+        return new Result(seed, world.getScore(), world.getIterations(), won);
+    }
+
+    /**
+     * Play a batch of games.
+     *
+     * @param pool pool to play the games on
+     * @param firstSeed seed of the first game, the rest follow on
+     * @param results array to store the result of each game in, one
+     * game being played for each element
+     * @return summary of the games
+     */
+    public Summary run(ForkJoinPool pool, long firstSeed, Result[] results) {
+        return run(pool, firstSeed, results.length, results);
+    }
+
+    /**
+     * Play a batch of games.
+     *
+     * @param pool pool to play the games on
+     * @param firstSeed seed of the first game, the rest follow on
+     * @param games number of games
+     * @param results array to store the result of each game in, or null
+     * @return summary of the games
+     */
+    public Summary run(ForkJoinPool pool, long firstSeed, int games, Result[] results) {
+        return pool.invoke(new Batch(firstSeed, 0, games, results));
+    }
+
+    /**
+     * Task playing a range of the games in a batch, splitting it in two
+     * until each part is small enough to play on one thread.
+     */
+    private class Batch extends RecursiveTask<Summary> {
+
+        /**
+         * Version of the serialised form, which is never used.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Seed of the first game in the batch.
+         */
+        private final long firstSeed;
+
+        /**
+         * Range of games played by this task.
+         */
+        private final int from, to;
+
+        /**
+         * Results of every game in the batch, or null.
+         */
+        private final Result[] results;
+
+        /**
+         * @param firstSeed seed of the first game in the batch
+         * @param from first game played by this task
+         * @param to game after the last played by this task
+         * @param results results of every game in the batch, or null
+         */
+        Batch(long firstSeed, int from, int to, Result[] results) {
+            this.firstSeed = firstSeed;
+            this.from = from;
+            this.to = to;
+            this.results = results;
+        }
+
+        @Override
+        protected Summary compute() {
+            if (to - from > GAMES_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                Batch second = new Batch(firstSeed, middle, to, results);
+                second.fork();
+                Summary summary = new Batch(firstSeed, from, middle, results).compute();
+                summary.add(second.join());
+                return summary;
+            }
+
+            GameWorld world = new GameWorld(config);
+            RandomBot bot = new RandomBot(firstSeed);
+            Summary summary = new Summary();
+            for (int n = from; n < to; n++) {
+                Result result = play(world, bot, firstSeed + n);
+                summary.add(result);
+                if (results != null) {
+                    results[n] = result;
+                }
+            }
+            return summary;
+        }
+    }
+
+    /**
+     * Play a batch of games and print a summary.
+     *
+     * @param args options, as above
+     * @throws IOException if the CSV file can't be written
+     */
+    public static void main(String[] args) throws IOException {
+        GameConfig config = new GameConfig();
+        int games = 10000, threads = Runtime.getRuntime().availableProcessors(), maxTicks = 100000;
+        long seed = 0;
+        String csv = null;
+        try {
+            for (int n = 0; n < args.length; n++) {
+                String option = args[n];
+                if (n + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing value for " + option);
+                }
+
+                String value = args[++n];
+                if (option.equals("--games")) {
+                    games = Integer.parseInt(value);
+                } else if (option.equals("--seed")) {
+                    seed = Long.parseLong(value);
+                } else if (option.equals("--threads")) {
+                    threads = Integer.parseInt(value);
+                } else if (option.equals("--max-ticks")) {
+                    maxTicks = Integer.parseInt(value);
+                } else if (option.equals("--csv")) {
+                    csv = value;
+                } else if (!config.setOption(option, value)) {
+                    throw new IllegalArgumentException("Unknown option " + option);
+                }
+            }
+
+            // reject waves which don't fit the playfield before starting
+            new GameWorld(config);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: java spaceinvaders.BatchRunner " + GameConfig.OPTIONS_USAGE
+                    + " [--games N] [--seed S] [--threads N] [--max-ticks N] [--csv FILE]");
+            System.exit(2);
+        }
+
+        BatchRunner runner = new BatchRunner(config, 1000.0 / 60, maxTicks);
+        Result[] results = csv != null ? new Result[games] : null;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+
+        long start = System.nanoTime();
+        Summary summary = runner.run(pool, seed, games, results);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+
+        System.out.println(summary);
+        System.out.printf("%.2f s on %d threads: %.0f games/s, %.0f ticks/s%n",
+                elapsed, threads, games / elapsed, summary.getTicks() / elapsed);
+
+        if (results != null) {
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(csv), StandardCharsets.UTF_8))) {
+                out.println("seed,score,ticks,won");
+                for (Result result : results) {
+                    out.println(result.seed + "," + result.score + "," + result.ticks + "," + result.won);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package spaceinvaders;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid used as the broad phase of collision detection. Each
+ * tick the grid is cleared and every entity is recorded along with its
+ * bounding box and collision layer/mask (see Entity).  Entities occupying
+ * a layer that something else collides with are binned into the cells
+ * their bounding box overlaps.  Entities with a non-empty collision mask
+ * then look up the cells they overlap, and only those grid members on a
+ * layer in the mask are reported as candidate pairs.
+ * <p>
+ * As a result pairs that can never interact (alien vs alien, shot vs ship
+ * etc.) are never generated, and the number of narrow phase rectangle
+ * tests tracks how crowded the playfield is rather than the square of the
+ * number of entities.
+ * <p>
+ * Entities lying partly or wholly outside the grid are clamped into the
+ * border cells, so nothing is ever missed, it just ends up sharing a cell
+ * with more neighbours.
+ * <p>
+ * All storage is reused from tick to tick, so once the arrays have grown
+ * to fit the game no further allocation takes place.
+ *
+ * @author Tim Vaughan
+ */
+public class CollisionGrid {
+
+    /**
+     * Width and height of each (square) cell in pixels.
+     */
+    private final int cellSize;
+
+    /**
+     * Number of cells across and down the grid.
+     */
+    private final int columns, rows;
+
+    /**
+     * Entity indices stored in each cell.
+     */
+    private final int[][] cells;
+
+    /**
+     * Number of entity indices currently stored in each cell.
+     */
+    private final int[] cellCounts;
+
+    /**
+     * Indices, bounding boxes, collision layers and collision masks of the
+     * entities added since the last clear().
+     */
+    private int[] ids = new int[64], left = new int[64], top = new int[64],
+            right = new int[64], bottom = new int[64],
+            layers = new int[64], masks = new int[64];
+
+    /**
+     * Number of entities added since the last clear().
+     */
+    private int entityCount;
+
+    /**
+     * Stamp used to avoid reporting an entity twice when it occupies
+     * several of the cells overlapped by a single query.
+     */
+    private int[] stamps = new int[64];
+
+    /**
+     * Current query stamp.
+     */
+    private int queryStamp;
+
+    /**
+     * Candidate pairs found by the last call to findPairs().
+     */
+    private long[] pairs = new long[256];
+
+    /**
+     * Number of valid entries in pairs.
+     */
+    private int pairCount;
+
+    /**
+     * Create a new grid covering the given area.
+     *
+     * @param width Width of the covered area in pixels
+     * @param height Height of the covered area in pixels
+     * @param cellSize Size of each cell in pixels
+     */
+    public CollisionGrid(int width, int height, int cellSize) {
+        this.cellSize = cellSize;
+        this.columns = (width + cellSize - 1) / cellSize;
+        this.rows = (height + cellSize - 1) / cellSize;
+
+        cells = new int[columns * rows][8];
+        cellCounts = new int[columns * rows];
+    }
+
+    /**
+     * Remove all entities from the grid.
+     */
+    public void clear() {
+        Arrays.fill(cellCounts, 0);
+        entityCount = 0;
+        pairCount = 0;
+    }
+
+    /**
+     * Record an entity for the next call to findPairs().
+     *
+     * @param id Index of the entity in the game's entity store
+     * @param x Left edge of the bounding box
+     * @param y Top edge of the bounding box
+     * @param width Width of the bounding box
+     * @param height Height of the bounding box
+     * @param layer Collision layers the entity occupies
+     * @param mask Collision layers the entity collides with
+     */
+    public void add(int id, int x, int y, int width, int height, int layer, int mask) {
+        if (entityCount == left.length) {
+            int newLength = 2 * left.length;
+            ids = Arrays.copyOf(ids, newLength);
+            left = Arrays.copyOf(left, newLength);
+            top = Arrays.copyOf(top, newLength);
+            right = Arrays.copyOf(right, newLength);
+            bottom = Arrays.copyOf(bottom, newLength);
+            layers = Arrays.copyOf(layers, newLength);
+            masks = Arrays.copyOf(masks, newLength);
+            stamps = Arrays.copyOf(stamps, newLength);
+        }
+
+        int index = entityCount++;
+        ids[index] = id;
+        left[index] = x;
+        top[index] = y;
+        right[index] = x + width - 1;
+        bottom[index] = y + height - 1;
+        layers[index] = layer;
+        masks[index] = mask;
+        stamps[index] = 0;
+    }
+
+    /**
+     * Find every pair of entities where one collides with a layer the other
+     * occupies and the two share at least one grid cell.  Each pair is
+     * reported once, packed into a long with the lower entity index in the
+     * high word, and the pairs are sorted so that they are visited in
+     * exactly the same order as a brute force double loop would visit them.
+     * Any pairs added with addPair() since the last clear() are included.
+     *
+     * @return number of candidate pairs, retrieved with getPair()
+     */
+    public int findPairs() {
+        // only entities on a layer that something collides with need
+        // to go into the grid at all
+        int targetLayers = 0;
+        for (int i = 0; i < entityCount; i++) {
+            targetLayers |= masks[i];
+        }
+
+        for (int i = 0; i < entityCount; i++) {
+            if ((layers[i] & targetLayers) == 0) {
+                continue;
+            }
+
+            for (int r = row(top[i]); r <= row(bottom[i]); r++) {
+                for (int c = column(left[i]); c <= column(right[i]); c++) {
+                    int cell = r * columns + c;
+                    if (cellCounts[cell] == cells[cell].length) {
+                        cells[cell] = Arrays.copyOf(cells[cell], 2 * cells[cell].length);
+                    }
+                    cells[cell][cellCounts[cell]++] = i;
+                }
+            }
+        }
+
+        // now let each colliding entity look up the cells it overlaps
+        for (int i = 0; i < entityCount; i++) {
+            if (masks[i] == 0) {
+                continue;
+            }
+
+            queryStamp++;
+            for (int r = row(top[i]); r <= row(bottom[i]); r++) {
+                for (int c = column(left[i]); c <= column(right[i]); c++) {
+                    int cell = r * columns + c;
+                    int[] members = cells[cell];
+
+                    for (int k = 0; k < cellCounts[cell]; k++) {
+                        int j = members[k];
+                        if (j == i || stamps[j] == queryStamp
+                                || (layers[j] & masks[i]) == 0) {
+                            continue;
+                        }
+
+                        stamps[j] = queryStamp;
+                        addPair(ids[i], ids[j]);
+                    }
+                }
+            }
+        }
+
+        sortPairs();
+
+        return pairCount;
+    }
+
+    /**
+     * Find every pair of entities where one collides with a layer the other
+     * occupies, ignoring the grid entirely.  Produces the same candidates
+     * as findPairs() plus those which are too far apart to collide, so is
+     * mainly useful for checking the grid.  Any pairs added with addPair()
+     * since the last clear() are included.
+     *
+     * @return number of candidate pairs, retrieved with getPair()
+     */
+    public int findPairsBruteForce() {
+        for (int i = 0; i < entityCount; i++) {
+            if (masks[i] == 0) {
+                continue;
+            }
+
+            for (int j = 0; j < entityCount; j++) {
+                if (j != i && (layers[j] & masks[i]) != 0) {
+                    addPair(ids[i], ids[j]);
+                }
+            }
+        }
+
+        sortPairs();
+
+        return pairCount;
+    }
+
+    /**
+     * Retrieve a pair found by the last call to findPairs().
+     *
+     * @param n Index of pair
+     * @return pair packed as (first &lt;&lt; 32) | second
+     */
+    public long getPair(int n) {
+        return pairs[n];
+    }
+
+    /**
+     * Add a candidate pair found by some other means, e.g. an index
+     * specialised to a particular kind of entity.
+     *
+     * @param a index of one entity
+     * @param b index of the other entity
+     */
+    public void addPair(int a, int b) {
+        if (pairCount == pairs.length) {
+            pairs = Arrays.copyOf(pairs, 2 * pairs.length);
+        }
+        if (a < b) {
+            pairs[pairCount++] = ((long) a << 32) | b;
+        } else {
+            pairs[pairCount++] = ((long) b << 32) | a;
+        }
+    }
+
+    /**
+     * Sort the candidate pairs and drop duplicates, which arise when two
+     * entities each collide with the other's layer.
+     */
+    private void sortPairs() {
+        Arrays.sort(pairs, 0, pairCount);
+
+        int unique = 0;
+        for (int n = 0; n < pairCount; n++) {
+            if (unique == 0 || pairs[n] != pairs[unique - 1]) {
+                pairs[unique++] = pairs[n];
+            }
+        }
+        pairCount = unique;
+    }
+
+    /**
+     * @param x horizontal pixel coordinate
+     * @return grid column containing x, clamped to the grid
+     */
+    private int column(int x) {
+        return Math.min(Math.max(Math.floorDiv(x, cellSize), 0), columns - 1);
+    }
+
+    /**
+     * @param y vertical pixel coordinate
+     * @return grid row containing y, clamped to the grid
+     */
+    private int row(int y) {
+        return Math.min(Math.max(Math.floorDiv(y, cellSize), 0), rows - 1);
+    }
+}
@@ -0,0 +1,261 @@
+package spaceinvaders;
+
+import java.util.Arrays;
+
+/**
+ * A set of rectangles of the screen which need to be redrawn.
+ *
+ * Rectangles are added freely, then merge() combines them into a small
+ * set covering the same pixels: any two rectangles which overlap, or are
+ * close enough that redrawing their bounding box would cost little more
+ * than redrawing both, are replaced by that bounding box.  If that still
+ * leaves too many, they are replaced by a single bounding box, since
+ * each rectangle carries an overhead of its own when drawn.
+ *
+ * Everything is clamped to the screen.  No allocation takes place once
+ * the arrays have grown to fit.
+ *
+ * @author Tim Vaughan
+ */
+public class DirtyRegions {
+
+    /**
+     * Extra area (pixels) which may be redrawn unnecessarily in order to
+     * merge two rectangles.
+     */
+    private static final int MERGE_SLACK = 1024;
+
+    /**
+     * Multiple of the maximum number of rectangles beyond which merge()
+     * doesn't try to merge them pairwise.
+     */
+    private static final int MERGE_LIMIT_FACTOR = 8;
+
+    /**
+     * Size of the screen.
+     */
+    private final int width, height;
+
+    /**
+     * Maximum number of rectangles left after merging.
+     */
+    private final int maxRegions;
+
+    /**
+     * Edges of each rectangle, right and bottom exclusive.
+     */
+    private int[] left = new int[32], top = new int[32],
+            right = new int[32], bottom = new int[32];
+
+    /**
+     * Number of rectangles.
+     */
+    private int count;
+
+    /**
+     * Create an empty set.
+     *
+     * @param width width of the screen
+     * @param height height of the screen
+     * @param maxRegions maximum number of rectangles left after merging
+     */
+    public DirtyRegions(int width, int height, int maxRegions) {
+        this.width = width;
+        this.height = height;
+        this.maxRegions = maxRegions;
+    }
+
+    /**
+     * Remove every rectangle.
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Add a rectangle.  Rectangles lying entirely off the screen are
+     * ignored.
+     *
+     * @param x left edge
+     * @param y top edge
+     * @param w width
+     * @param h height
+     */
+    public void add(int x, int y, int w, int h) {
+        int l = Math.max(x, 0), t = Math.max(y, 0);
+        int r = Math.min(x + w, width), b = Math.min(y + h, height);
+        if (l >= r || t >= b) {
+            return;
+        }
+
+        if (count == left.length) {
+            int newLength = 2 * count;
+            left = Arrays.copyOf(left, newLength);
+            top = Arrays.copyOf(top, newLength);
+            right = Arrays.copyOf(right, newLength);
+            bottom = Arrays.copyOf(bottom, newLength);
+        }
+
+        left[count] = l;
+        top[count] = t;
+        right[count] = r;
+        bottom[count] = b;
+        count++;
+    }
+
+    /**
+     * Add every rectangle of another set.
+     *
+     * @param other the other set
+     */
+    public void add(DirtyRegions other) {
+        for (int i = 0; i < other.count; i++) {
+            add(other.getX(i), other.getY(i), other.getWidth(i), other.getHeight(i));
+        }
+    }
+
+    /**
+     * Mark the whole screen as needing to be redrawn.
+     */
+    public void addAll() {
+        count = 0;
+        add(0, 0, width, height);
+    }
+
+    /**
+     * Copy another set.
+     *
+     * @param other the other set
+     */
+    public void set(DirtyRegions other) {
+        count = 0;
+        add(other);
+    }
+
+    /**
+     * Combine rectangles which overlap or lie close together, and make
+     * sure no more than the maximum number remain.
+     */
+    public void merge() {
+        // merging pairwise costs the square of the number of rectangles
+        // per pass, so past a point just redraw their bounding box
+        if (count > maxRegions * MERGE_LIMIT_FACTOR) {
+            unite();
+            return;
+        }
+
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+
+            for (int i = 0; i < count; i++) {
+                for (int j = i + 1; j < count; j++) {
+                    int l = Math.min(left[i], left[j]), t = Math.min(top[i], top[j]);
+                    int r = Math.max(right[i], right[j]), b = Math.max(bottom[i], bottom[j]);
+
+                    long union = (long) (r - l) * (b - t);
+                    if (union > area(i) + area(j) + MERGE_SLACK) {
+                        continue;
+                    }
+
+                    // replace i by the union and j by the last rectangle
+                    left[i] = l;
+                    top[i] = t;
+                    right[i] = r;
+                    bottom[i] = b;
+                    remove(j);
+                    j = i;
+                    merged = true;
+                }
+            }
+        }
+
+        if (count > maxRegions) {
+            unite();
+        }
+    }
+
+    /**
+     * Replace every rectangle by their bounding box.
+     */
+    private void unite() {
+        for (int i = 1; i < count; i++) {
+            left[0] = Math.min(left[0], left[i]);
+            top[0] = Math.min(top[0], top[i]);
+            right[0] = Math.max(right[0], right[i]);
+            bottom[0] = Math.max(bottom[0], bottom[i]);
+        }
+        count = Math.min(count, 1);
+    }
+
+    /**
+     * @param i index of rectangle
+     * @return area of the rectangle
+     */
+    private long area(int i) {
+        return (long) (right[i] - left[i]) * (bottom[i] - top[i]);
+    }
+
+    /**
+     * Remove a rectangle, moving the last one into its place.
+     *
+     * @param i index of rectangle
+     */
+    private void remove(int i) {
+        count--;
+        left[i] = left[count];
+        top[i] = top[count];
+        right[i] = right[count];
+        bottom[i] = bottom[count];
+    }
+
+    /**
+     * @return the number of rectangles
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return the total area of the rectangles, counting any overlap twice
+     */
+    public long getArea() {
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total += area(i);
+        }
+        return total;
+    }
+
+    /**
+     * @param i index of rectangle
+     * @return left edge of the rectangle
+     */
+    public int getX(int i) {
+        return left[i];
+    }
+
+    /**
+     * @param i index of rectangle
+     * @return top edge of the rectangle
+     */
+    public int getY(int i) {
+        return top[i];
+    }
+
+    /**
+     * @param i index of rectangle
+     * @return width of the rectangle
+     */
+    public int getWidth(int i) {
+        return right[i] - left[i];
+    }
+
+    /**
+     * @param i index of rectangle
+     * @return height of the rectangle
+     */
+    public int getHeight(int i) {
+        return bottom[i] - top[i];
+    }
+}
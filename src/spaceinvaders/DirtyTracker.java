@@ -0,0 +1,136 @@
+package spaceinvaders;
+
+import java.util.Arrays;
+
+/**
+ * Works out which parts of the screen have changed since the previous
+ * frame as far as the entities are concerned.
+ *
+ * The tracker remembers where each entity was drawn, indexed by the
+ * entity's slot in the store (the stable part of its handle).  An entity
+ * drawn in the same place as last frame needs nothing redrawn; one which
+ * has moved needs both its old and new positions redrawn, and one which
+ * has gone needs its old position redrawn.  A slot reused by a new entity
+ * is recognised by the handle's generation changing.
+ *
+ * @author Tim Vaughan
+ */
+public class DirtyTracker {
+
+    /**
+     * Handle of the entity last drawn from each slot.
+     */
+    private long[] handles = new long[0];
+
+    /**
+     * Where each slot's entity was last drawn.
+     */
+    private int[] x = new int[0], y = new int[0], w = new int[0], h = new int[0];
+
+    /**
+     * True if each slot's entity is currently drawn on the screen.
+     */
+    private boolean[] drawn = new boolean[0];
+
+    /**
+     * Frame in which each slot was last seen.
+     */
+    private int[] seen = new int[0];
+
+    /**
+     * Current frame number.
+     */
+    private int frame;
+
+    /**
+     * Record where every entity is about to be drawn, and add the areas
+     * of the screen which have changed to a set of dirty regions.
+     *
+     * @param store the entities
+     * @param alpha Fraction of a step elapsed since the last tick (0-1)
+     * @param dirty set to add changed areas to
+     */
+    public void update(EntityStore store, double alpha, DirtyRegions dirty) {
+        frame++;
+
+        for (int i = 0; i < store.size(); i++) {
+            long handle = store.getHandle(i);
+            int s = (int) handle;
+            if (s >= handles.length) {
+                grow(s + 1);
+            }
+            seen[s] = frame;
+
+            Entity entity = store.getEntity(i);
+            int nx = entity.getRenderX(alpha), ny = entity.getRenderY(alpha);
+            int nw = entity.getWidth(), nh = entity.getHeight();
+
+            if (drawn[s] && handles[s] == handle
+                    && x[s] == nx && y[s] == ny && w[s] == nw && h[s] == nh) {
+                continue;
+            }
+
+            if (drawn[s]) {
+                addMove(dirty, x[s], y[s], w[s], h[s], nx, ny, nw, nh);
+            } else {
+                dirty.add(nx, ny, nw, nh);
+            }
+
+            handles[s] = handle;
+            x[s] = nx;
+            y[s] = ny;
+            w[s] = nw;
+            h[s] = nh;
+            drawn[s] = true;
+        }
+
+        // anything not seen this frame has been removed
+        for (int s = 0; s < handles.length; s++) {
+            if (drawn[s] && seen[s] != frame) {
+                dirty.add(x[s], y[s], w[s], h[s]);
+                drawn[s] = false;
+            }
+        }
+    }
+
+    /**
+     * Add the areas covered by a sprite before and after a move.  These
+     * usually overlap, in which case they are added as one rectangle.
+     *
+     * @param dirty set to add the areas to
+     * @param ox old left edge
+     * @param oy old top edge
+     * @param ow old width
+     * @param oh old height
+     * @param nx new left edge
+     * @param ny new top edge
+     * @param nw new width
+     * @param nh new height
+     */
+    private static void addMove(DirtyRegions dirty, int ox, int oy, int ow, int oh,
+            int nx, int ny, int nw, int nh) {
+        if (ox <= nx + nw && nx <= ox + ow && oy <= ny + nh && ny <= oy + oh) {
+            int l = Math.min(ox, nx), t = Math.min(oy, ny);
+            dirty.add(l, t, Math.max(ox + ow, nx + nw) - l, Math.max(oy + oh, ny + nh) - t);
+        } else {
+            dirty.add(ox, oy, ow, oh);
+            dirty.add(nx, ny, nw, nh);
+        }
+    }
+
+    /**
+     * Make room for more slots.
+     *
+     * @param minLength number of slots needed
+     */
+    private void grow(int minLength) {
+        int length = Math.max(minLength, Math.max(16, 2 * handles.length));
+        handles = Arrays.copyOf(handles, length);
+        x = Arrays.copyOf(x, length);
+        y = Arrays.copyOf(y, length);
+        w = Arrays.copyOf(w, length);
+        h = Arrays.copyOf(h, length);
+        drawn = Arrays.copyOf(drawn, length);
+        seen = Arrays.copyOf(seen, length);
+    }
+}
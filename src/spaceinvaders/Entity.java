@@ -1,149 +1,276 @@
 package spaceinvaders;
 
-import java.awt.Graphics;
-import java.awt.Rectangle;
-
 /**
  * An entity represents any element that appears in the game. The
- * entity is responsible for resolving collisions and movement
- * based on a set of properties defined either by subclass or externally.
- * 
+ * entity is responsible for resolving collisions based on a set of
+ * properties defined either by subclass or externally.
+ *
  * Note that doubles are used for positions. This may seem strange
  * given that pixels locations are integers. However, using double means
  * that an entity can move a partial pixel. It doesn't of course mean that
  * they will be display half way through a pixel but allows us not lose
  * accuracy as we move.
- * 
+ *
+ * The state of the entity (position, speed, size etc.) doesn't live in
+ * this object but in a slot of the game's EntityStore, so that the game
+ * can move and collide entities by running straight through arrays.
+ * An entity object is just a handle on that slot, carrying the things
+ * which only matter when an event happens to it.
+ *
+ * Entities know nothing about how they are drawn, only the reference
+ * to their sprite and its size. This keeps the game rules free of
+ * any dependence on a display.
+ *
  * @author Kevin Glass
  */
 public abstract class Entity {
-	/** The current x location of this entity */ 
-	protected double x;
-	/** The current y location of this entity */
-	protected double y;
-	/** The sprite that represents this entity */
-	protected Sprite sprite;
-	/** The current speed of this entity horizontally (pixels/sec) */
-	protected double dx;
-	/** The current speed of this entity vertically (pixels/sec) */
-	protected double dy;
-	/** The rectangle used for this entity during collisions  resolution */
-	private final Rectangle me = new Rectangle();
-	/** The rectangle used for other entities during collision resolution */
-	private final Rectangle him = new Rectangle();
-	
+	/** Collision layer occupied by the player's ship */
+	public static final int LAYER_SHIP = 1;
+	/** Collision layer occupied by aliens */
+	public static final int LAYER_ALIEN = 2;
+	/** Collision layer occupied by the player's shots */
+	public static final int LAYER_SHOT = 4;
+
+	/** Type code of the player's ship */
+	public static final int TYPE_SHIP = 0;
+	/** Type code of an alien */
+	public static final int TYPE_ALIEN = 1;
+	/** Type code of a shot fired by the player */
+	public static final int TYPE_SHOT = 2;
+
+	/** The store holding this entity's state */
+	protected final EntityStore store;
+	/** The index of this entity in the store, kept up to date by the store, or -1 once removed */
+	int index;
+	/** The handle of this entity in the store */
+	private long handle;
+	/** The reference to the sprite that represents this entity */
+	protected final String spriteRef;
+	/** The shape of the sprite that represents this entity */
+	private final SpriteShape shape;
+	/** The type code of this entity */
+	private final int type;
+
 	/**
-	 * Construct a entity based on a sprite image and a location.
-	 * 
+	 * Construct a entity based on a sprite image and a location, and
+	 * add it to a store.
+	 *
+	 * @param store The store to hold the state of this entity
+	 * @param type The type code of this entity
 	 * @param ref The reference to the image to be displayed for this entity
  	 * @param x The initial x location of this entity
 	 * @param y The initial y location of this entity
 	 */
-	public Entity(String ref,int x,int y) {
-		this.sprite = SpriteStore.get().getSprite(ref);
-		this.x = x;
-		this.y = y;
+	public Entity(EntityStore store,int type,String ref,int x,int y) {
+		this.store = store;
+		this.spriteRef = ref;
+		this.shape = SpriteShapes.get().getShape(ref);
+		this.type = type;
+		
+		spawn(x,y);
 	}
 	
 	/**
-	 * Request that this entity move itself based on a certain ammount
-	 * of time passing.
+	 * Add this entity to its store at the given location, at rest and with
+	 * no collision layers. Entities which are reused once removed call
+	 * this to bring themselves back into the game.
 	 * 
-	 * @param delta The ammount of time that has passed in milliseconds
+	 * @param x The initial x location of this entity
+	 * @param y The initial y location of this entity
 	 */
-	public void move(long delta) {
-		// update the location of the entity based on move speeds
-		x += (delta * dx) / 1000;
-		y += (delta * dy) / 1000;
+	protected final void spawn(int x,int y) {
+		index = store.add(this,type,x,y,shape);
+		handle = store.getHandle(index);
 	}
 	
 	/**
-	 * Set the horizontal speed of this entity
+	 * Get the handle of this entity in its store. Unlike the entity
+	 * object itself, which may be recycled once removed, a handle only
+	 * ever refers to this particular appearance of the entity in the game.
 	 * 
+	 * @return The handle of this entity
+	 */
+	public long getHandle() {
+		return handle;
+	}
+	
+	/**
+	 * Check whether this entity is still in the game, i.e. it has neither
+	 * been removed nor killed this tick
+	 * 
+	 * @return True if the entity is alive
+	 */
+	public boolean isAlive() {
+		return index >= 0 && store.alive[index];
+	}
+
+	/**
+	 * Set the horizontal speed of this entity
+	 *
 	 * @param dx The horizontal speed of this entity (pixels/sec)
 	 */
 	public void setHorizontalMovement(double dx) {
-		this.dx = dx;
+		store.dx[index] = dx;
 	}
 
 	/**
 	 * Set the vertical speed of this entity
-	 * 
+	 *
      * @param dy The vertical speed of this entity (pixels/sec)
 	 */
 	public void setVerticalMovement(double dy) {
-		this.dy = dy;
+		store.dy[index] = dy;
 	}
-	
+
 	/**
 	 * Get the horizontal speed of this entity
-	 * 
+	 *
 	 * @return The horizontal speed of this entity (pixels/sec)
 	 */
 	public double getHorizontalMovement() {
-		return dx;
+		return store.dx[index];
 	}
 
 	/**
 	 * Get the vertical speed of this entity
-	 * 
+	 *
 	 * @return The vertical speed of this entity (pixels/sec)
 	 */
 	public double getVerticalMovement() {
-		return dy;
-	}
-	
-	/**
-	 * Draw this entity to the graphics context provided
-	 * 
-	 * @param g The graphics context on which to draw
-	 */
-	public void draw(Graphics g) {
-		sprite.draw(g,(int) x,(int) y);
+		return store.dy[index];
 	}
-	
+
 	/**
-	 * Do the logic associated with this entity. This method
-	 * will be called periodically based on game events
+	 * Get the reference to the sprite that should be drawn for this entity
+	 *
+	 * @return The sprite reference
 	 */
-	public void doLogic() {
+	public String getSpriteRef() {
+		return spriteRef;
 	}
-	
+
 	/**
 	 * Get the x location of this entity
-	 * 
+	 *
 	 * @return The x location of this entity
 	 */
 	public int getX() {
-		return (int) x;
+		return (int) store.x[index];
 	}
 
 	/**
 	 * Get the y location of this entity
-	 * 
+	 *
 	 * @return The y location of this entity
 	 */
 	public int getY() {
-		return (int) y;
+		return (int) store.y[index];
 	}
-	
+
+	/**
+	 * Move this entity to a new location
+	 *
+	 * @param x The new x location of this entity
+	 * @param y The new y location of this entity
+	 */
+	public void setLocation(double x,double y) {
+		store.x[index] = x;
+		store.y[index] = y;
+	}
+
+	/**
+	 * Get the x location at which to draw this entity when the display
+	 * is part way between two game steps
+	 *
+	 * @param alpha Fraction of a step elapsed since the last move (0-1)
+	 * @return The interpolated x location of this entity
+	 */
+	public int getRenderX(double alpha) {
+		double prevX = store.prevX[index];
+		return (int) (prevX + (store.x[index] - prevX) * alpha);
+	}
+
+	/**
+	 * Get the y location at which to draw this entity when the display
+	 * is part way between two game steps
+	 *
+	 * @param alpha Fraction of a step elapsed since the last move (0-1)
+	 * @return The interpolated y location of this entity
+	 */
+	public int getRenderY(double alpha) {
+		double prevY = store.prevY[index];
+		return (int) (prevY + (store.y[index] - prevY) * alpha);
+	}
+
+	/**
+	 * Get the width of this entity's bounding box
+	 *
+	 * @return The width in pixels of this entity
+	 */
+	public int getWidth() {
+		return store.width[index];
+	}
+
+	/**
+	 * Get the height of this entity's bounding box
+	 *
+	 * @return The height in pixels of this entity
+	 */
+	public int getHeight() {
+		return store.height[index];
+	}
+
+	/**
+	 * Get the collision layers this entity occupies
+	 *
+	 * @return Bitwise OR of the LAYER_ constants
+	 */
+	public int getCollisionLayer() {
+		return store.layer[index];
+	}
+
+	/**
+	 * Get the collision layers this entity collides with. Entities are
+	 * only ever tested against each other if one of them collides with
+	 * a layer the other occupies.
+	 *
+	 * @return Bitwise OR of the LAYER_ constants
+	 */
+	public int getCollisionMask() {
+		return store.mask[index];
+	}
+
+	/**
+	 * Set the collision layers this entity occupies and collides with
+	 *
+	 * @param layer Bitwise OR of the LAYER_ constants occupied
+	 * @param mask Bitwise OR of the LAYER_ constants collided with
+	 */
+	protected void setCollision(int layer,int mask) {
+		store.layer[index] = layer;
+		store.mask[index] = mask;
+	}
+
 	/**
 	 * Check if this entity collised with another.
-	 * 
+	 *
 	 * @param other The other entity to check collision against
 	 * @return True if the entities collide with each other
 	 */
 	public boolean collidesWith(Entity other) {
-		me.setBounds((int) x,(int) y,sprite.getWidth(),sprite.getHeight());
-		him.setBounds((int) other.x,(int) other.y,other.sprite.getWidth(),other.sprite.getHeight());
+		return store.overlaps(index,other.index);
+	}
 
-		return me.intersects(him);
+	/**
+	 * Notification that this entity has been removed from its store.
+	 */
+	protected void removed() {
 	}
 	
 	/**
 	 * Notification that this entity collided with another.
-	 * 
+	 *
 	 * @param other The entity with which this entity collided.
 	 */
 	public abstract void collidedWith(Entity other);
-}
\ No newline at end of file
+}
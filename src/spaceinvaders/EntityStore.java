@@ -0,0 +1,362 @@
+package spaceinvaders;
+
+import java.util.Arrays;
+
+/**
+ * Storage for the state of every entity in a game, held as a set of
+ * parallel primitive arrays (one per property) rather than as fields of
+ * individual objects.  Entity objects are thin wrappers which read and
+ * write their own slot in these arrays.
+ *
+ * Keeping the hot data together means the per-tick movement and
+ * collision loops run sequentially through memory, touch no Entity
+ * objects and allocate nothing.
+ *
+ * Entities are stored densely, so their index changes as other entities
+ * are removed.  Anything which needs to refer to an entity across ticks
+ * should hold its handle instead: a long combining a stable slot number
+ * with a generation count which is bumped every time the slot is freed.
+ * A handle to an entity which has since been removed (and possibly had
+ * its slot reused) is simply no longer valid, rather than silently
+ * referring to the wrong entity.
+ *
+ * Removal is two-phase: kill() marks an entity dead and queues it, and
+ * compact() later swaps the last entity into each dead one's place.  A
+ * kill is ignored if the entity is already dead, so an entity can't be
+ * queued twice, and the cost of compacting depends only on the number of
+ * entities removed.  Entity objects are told their new index as they are
+ * moved, and notified as they are removed so that they can be recycled.
+ *
+ * @author Tim Vaughan
+ */
+public class EntityStore {
+
+    /**
+     * Current and previous positions, and velocities (pixels/sec).
+     */
+    double[] x, y, prevX, prevY, dx, dy;
+
+    /**
+     * Bounding box sizes.
+     */
+    int[] width, height;
+
+    /**
+     * Sprite shapes, used for pixel accurate collisions.
+     */
+    SpriteShape[] shape;
+
+    /**
+     * Entity type (one of the Entity.TYPE_ constants).
+     */
+    int[] type;
+
+    /**
+     * Collision layers occupied and collided with.
+     */
+    int[] layer, mask;
+
+    /**
+     * False once an entity has been killed.
+     */
+    boolean[] alive;
+
+    /**
+     * Entity object of each entity.
+     */
+    Entity[] entities;
+
+    /**
+     * Slot number of each entity.
+     */
+    private int[] slot;
+
+    /**
+     * Index of the entity occupying each slot, or -1 if the slot is free.
+     */
+    private int[] slotIndex = new int[0];
+
+    /**
+     * Generation of each slot, incremented whenever the slot is freed.
+     */
+    private int[] slotGeneration = new int[0];
+
+    /**
+     * Stack of free slots.
+     */
+    private int[] freeSlots = new int[0];
+
+    /**
+     * Number of free slots on the stack, and total number of slots.
+     */
+    private int freeSlotCount, slotCount;
+
+    /**
+     * Indices of entities killed since the last compact().
+     */
+    private int[] removals;
+
+    /**
+     * Number of entities killed since the last compact().
+     */
+    private int removalCount;
+
+    /**
+     * Number of entities stored.
+     */
+    int size;
+
+    /**
+     * Create an empty store.
+     *
+     * @param capacity initial number of entities to make room for
+     */
+    public EntityStore(int capacity) {
+        x = new double[capacity];
+        y = new double[capacity];
+        prevX = new double[capacity];
+        prevY = new double[capacity];
+        dx = new double[capacity];
+        dy = new double[capacity];
+        width = new int[capacity];
+        height = new int[capacity];
+        shape = new SpriteShape[capacity];
+        type = new int[capacity];
+        layer = new int[capacity];
+        mask = new int[capacity];
+        alive = new boolean[capacity];
+        entities = new Entity[capacity];
+        slot = new int[capacity];
+        removals = new int[capacity];
+    }
+
+    /**
+     * @return the number of entities stored
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index index of entity
+     * @return the Entity object of the entity at index
+     */
+    public Entity getEntity(int index) {
+        return entities[index];
+    }
+
+    /**
+     * @param index index of entity
+     * @return the handle (slot and generation) of the entity at index
+     */
+    public long getHandle(int index) {
+        int s = slot[index];
+        return ((long) slotGeneration[s] << 32) | s;
+    }
+
+    /**
+     * Find the current index of an entity.
+     *
+     * @param handle handle of the entity
+     * @return the index of the entity, or -1 if it has been removed
+     */
+    public int indexOf(long handle) {
+        int s = (int) handle;
+        if (s < 0 || s >= slotCount || slotGeneration[s] != (int) (handle >>> 32)) {
+            return -1;
+        }
+        return slotIndex[s];
+    }
+
+    /**
+     * Remove every entity.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            freeSlot(slot[i]);
+
+            Entity entity = entities[i];
+            entities[i] = null;
+            shape[i] = null;
+            entity.index = -1;
+            entity.removed();
+        }
+        size = 0;
+        removalCount = 0;
+    }
+
+    /**
+     * Add an entity, at rest and with no collision layers.
+     *
+     * @param entity Entity object of the new entity
+     * @param entityType one of the Entity.TYPE_ constants
+     * @param initialX initial x location
+     * @param initialY initial y location
+     * @param entityShape shape of the entity's sprite
+     * @return index of the new entity
+     */
+    public int add(Entity entity, int entityType, double initialX, double initialY, SpriteShape entityShape) {
+        if (size == x.length) {
+            grow();
+        }
+
+        int i = size++;
+        int s = allocateSlot();
+        slot[i] = s;
+        slotIndex[s] = i;
+
+        x[i] = prevX[i] = initialX;
+        y[i] = prevY[i] = initialY;
+        dx[i] = dy[i] = 0;
+        width[i] = entityShape.getWidth();
+        height[i] = entityShape.getHeight();
+        shape[i] = entityShape;
+        type[i] = entityType;
+        layer[i] = mask[i] = 0;
+        alive[i] = true;
+        entities[i] = entity;
+
+        return i;
+    }
+
+    /**
+     * Mark an entity as dead and queue it for removal.  It stays in the
+     * store, and keeps its index, until the next call to compact().
+     * Killing an entity which is already dead has no effect.
+     *
+     * @param index index of entity
+     */
+    public void kill(int index) {
+        if (alive[index]) {
+            alive[index] = false;
+            removals[removalCount++] = index;
+        }
+    }
+
+    /**
+     * Remove all dead entities, swapping the last entity into the place of
+     * each one removed and telling its Entity object its new index.
+     */
+    public void compact() {
+        // work down from the highest index, so that the entity swapped
+        // into a gap is never one which is itself waiting to be removed
+        Arrays.sort(removals, 0, removalCount);
+
+        for (int k = removalCount - 1; k >= 0; k--) {
+            int i = removals[k];
+            Entity entity = entities[i];
+
+            freeSlot(slot[i]);
+
+            int last = --size;
+            if (i != last) {
+                x[i] = x[last];
+                y[i] = y[last];
+                prevX[i] = prevX[last];
+                prevY[i] = prevY[last];
+                dx[i] = dx[last];
+                dy[i] = dy[last];
+                width[i] = width[last];
+                height[i] = height[last];
+                shape[i] = shape[last];
+                type[i] = type[last];
+                layer[i] = layer[last];
+                mask[i] = mask[last];
+                alive[i] = true;
+                slot[i] = slot[last];
+                slotIndex[slot[i]] = i;
+                entities[i] = entities[last];
+                entities[i].index = i;
+            }
+            entities[last] = null;
+            shape[last] = null;
+
+            entity.index = -1;
+            entity.removed();
+        }
+
+        removalCount = 0;
+    }
+
+    /**
+     * @return a free slot, which is marked as in use
+     */
+    private int allocateSlot() {
+        if (freeSlotCount > 0) {
+            return freeSlots[--freeSlotCount];
+        }
+
+        if (slotCount == slotIndex.length) {
+            int capacity = Math.max(16, 2 * slotIndex.length);
+            slotIndex = Arrays.copyOf(slotIndex, capacity);
+            slotGeneration = Arrays.copyOf(slotGeneration, capacity);
+            freeSlots = Arrays.copyOf(freeSlots, capacity);
+        }
+        return slotCount++;
+    }
+
+    /**
+     * Return a slot to the free stack, invalidating any handles to it.
+     *
+     * @param s slot to free
+     */
+    private void freeSlot(int s) {
+        slotIndex[s] = -1;
+        slotGeneration[s]++;
+        freeSlots[freeSlotCount++] = s;
+    }
+
+    /**
+     * Record the current location of every entity as the starting point
+     * of the next move, so that renderers can interpolate between the two.
+     */
+    public void rememberPositions() {
+        System.arraycopy(x, 0, prevX, 0, size);
+        System.arraycopy(y, 0, prevY, 0, size);
+    }
+
+    /**
+     * Check whether two entities overlap.  The bounding boxes are checked
+     * first, and only if they overlap are the sprite masks compared to see
+     * whether any solid pixels actually touch.
+     *
+     * @param i index of first entity
+     * @param j index of second entity
+     * @return true if the entities overlap
+     */
+    public boolean overlaps(int i, int j) {
+        int xi = (int) x[i], yi = (int) y[i];
+        int xj = (int) x[j], yj = (int) y[j];
+
+        if (xi >= xj + width[j] || xj >= xi + width[i]
+                || yi >= yj + height[j] || yj >= yi + height[i]) {
+            return false;
+        }
+
+        return SpriteShape.overlaps(shape[i], xi, yi, shape[j], xj, yj);
+    }
+
+    /**
+     * Double the capacity of every array.
+     */
+    private void grow() {
+        int capacity = Math.max(16, 2 * x.length);
+
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        prevX = Arrays.copyOf(prevX, capacity);
+        prevY = Arrays.copyOf(prevY, capacity);
+        dx = Arrays.copyOf(dx, capacity);
+        dy = Arrays.copyOf(dy, capacity);
+        width = Arrays.copyOf(width, capacity);
+        height = Arrays.copyOf(height, capacity);
+        shape = Arrays.copyOf(shape, capacity);
+        type = Arrays.copyOf(type, capacity);
+        layer = Arrays.copyOf(layer, capacity);
+        mask = Arrays.copyOf(mask, capacity);
+        alive = Arrays.copyOf(alive, capacity);
+        entities = Arrays.copyOf(entities, capacity);
+        slot = Arrays.copyOf(slot, capacity);
+        removals = Arrays.copyOf(removals, capacity);
+    }
+}
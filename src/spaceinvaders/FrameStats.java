@@ -0,0 +1,152 @@
+package spaceinvaders;
+
+/**
+ * Accumulates frame timing statistics: the interval between successive
+ * frames being presented and the time spent drawing each frame.  The
+ * standard deviation of the interval is a direct measure of frame pacing
+ * jitter.
+ *
+ * Statistics are gathered over a window which is started afresh by
+ * reset().  Not thread safe; frames are expected to be recorded from
+ * whichever single thread is presenting them.
+ *
+ * @author Tim Vaughan
+ */
+public class FrameStats {
+
+    /**
+     * Time the previous frame was presented (ns), or 0 if none yet.
+     */
+    private long lastPresent;
+
+    /**
+     * Time the current window was started (ns).
+     */
+    private long windowStart = System.nanoTime();
+
+    /**
+     * Number of frame intervals recorded.
+     */
+    private long intervals;
+
+    /**
+     * Running mean and sum of squared deviations of frame interval (ns),
+     * maintained using Welford's method.
+     */
+    private double intervalMean, intervalM2;
+
+    /**
+     * Shortest and longest frame interval (ns).
+     */
+    private long intervalMin = Long.MAX_VALUE, intervalMax;
+
+    /**
+     * Number of frames drawn, and total and longest draw time (ns).
+     */
+    private long frames, drawTotal, drawMax;
+
+    /**
+     * Record a presented frame.
+     *
+     * @param drawStart time drawing of the frame began (ns)
+     * @param present time the frame was presented (ns)
+     */
+    public void record(long drawStart, long present) {
+        long draw = present - drawStart;
+        frames += 1;
+        drawTotal += draw;
+        drawMax = Math.max(drawMax, draw);
+
+        if (lastPresent != 0) {
+            long interval = present - lastPresent;
+
+            intervals += 1;
+            double d = interval - intervalMean;
+            intervalMean += d / intervals;
+            intervalM2 += d * (interval - intervalMean);
+
+            intervalMin = Math.min(intervalMin, interval);
+            intervalMax = Math.max(intervalMax, interval);
+        }
+        lastPresent = present;
+    }
+
+    /**
+     * Start a new statistics window.
+     */
+    public void reset() {
+        windowStart = System.nanoTime();
+        lastPresent = 0;
+        intervals = 0;
+        intervalMean = 0;
+        intervalM2 = 0;
+        intervalMin = Long.MAX_VALUE;
+        intervalMax = 0;
+        frames = 0;
+        drawTotal = 0;
+        drawMax = 0;
+    }
+
+    /**
+     * @return time since the window was started (ns)
+     */
+    public long getWindowLength() {
+        return System.nanoTime() - windowStart;
+    }
+
+    /**
+     * @return number of frames recorded in this window
+     */
+    public long getFrameCount() {
+        return frames;
+    }
+
+    /**
+     * @return mean interval between frames (ms)
+     */
+    public double getMeanInterval() {
+        return intervalMean / 1e6;
+    }
+
+    /**
+     * @return standard deviation of the interval between frames (ms)
+     */
+    public double getIntervalJitter() {
+        return intervals > 1 ? Math.sqrt(intervalM2 / (intervals - 1)) / 1e6 : 0;
+    }
+
+    /**
+     * @return shortest interval between frames (ms)
+     */
+    public double getMinInterval() {
+        return intervals > 0 ? intervalMin / 1e6 : 0;
+    }
+
+    /**
+     * @return longest interval between frames (ms)
+     */
+    public double getMaxInterval() {
+        return intervalMax / 1e6;
+    }
+
+    /**
+     * @return mean time spent drawing a frame (ms)
+     */
+    public double getMeanDrawTime() {
+        return frames > 0 ? drawTotal / 1e6 / frames : 0;
+    }
+
+    /**
+     * @return longest time spent drawing a frame (ms)
+     */
+    public double getMaxDrawTime() {
+        return drawMax / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d frames, interval %.2f ms (min %.2f, max %.2f, jitter %.2f), draw %.2f ms (max %.2f)",
+                frames, getMeanInterval(), getMinInterval(), getMaxInterval(),
+                getIntervalJitter(), getMeanDrawTime(), getMaxDrawTime());
+    }
+}
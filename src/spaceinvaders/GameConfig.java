@@ -0,0 +1,252 @@
+package spaceinvaders;
+
+/**
+ * Settings a GameWorld is created with: the size of the playfield, the
+ * number, size and spacing of the formations of aliens, and how often the
+ * player can fire.  A new config holds
+ * the settings of the standard game, so only those which differ need to
+ * be set.  The world copies the settings when it is created, so a config
+ * can be changed and reused afterwards.
+ *
+ * @author Tim Vaughan
+ */
+public class GameConfig {
+
+    /**
+     * Size of the playfield in pixels.
+     */
+    private int width = 800, height = 600;
+
+    /**
+     * Number of formations of aliens.
+     */
+    private int formations = 1;
+
+    /**
+     * Number of rows of aliens, and of aliens in each row.
+     */
+    private int alienRows = 5, alienColumns = 12;
+
+    /**
+     * Distance between neighbouring aliens horizontally and vertically
+     * (pixels).
+     */
+    private double alienSpacingX = 50, alienSpacingY = 30;
+
+    /**
+     * Shortest interval between the player's shots (ms).
+     */
+    private double firingInterval = 500;
+
+    /**
+     * Maximum number of removed shots kept for reuse.
+     */
+    private int shotPoolCapacity = 64;
+
+    /**
+     * @return width of the playfield in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return height of the playfield in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Set the size of the playfield.  The ship starts in the middle of
+     * the bottom edge and the aliens turn around at the sides.
+     *
+     * @param width width in pixels
+     * @param height height in pixels
+     */
+    public void setPlayfield(int width, int height) {
+        if (width < 200 || height < 200) {
+            throw new IllegalArgumentException("Playfield too small: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * @return number of formations of aliens
+     */
+    public int getFormations() {
+        return formations;
+    }
+
+    /**
+     * Set the number of formations of aliens, each a wave of the size set
+     * by setAliens().  The formations start one above the other, moving
+     * in alternate directions, and each turns around on its own when it
+     * reaches the side of the playfield.
+     *
+     * @param formations number of formations
+     */
+    public void setFormations(int formations) {
+        if (formations < 1) {
+            throw new IllegalArgumentException("Invalid number of formations " + formations);
+        }
+        this.formations = formations;
+    }
+
+    /**
+     * Usage of the command line options understood by setOption().
+     */
+    static final String OPTIONS_USAGE = "[--playfield WxH] [--aliens RxC] [--spacing X,Y] [--formations N]"
+            + " [--fire-interval MS] [--shot-pool N]";
+
+    /**
+     * Apply a command line option, as used by the tools which run games
+     * headless:
+     * <pre>
+     * --playfield WxH      size of the playfield in pixels (800x600)
+     * --aliens RxC         rows and columns of each formation (5x12)
+     * --spacing X,Y        spacing of the aliens in pixels (50,30)
+     * --formations N       number of formations (1)
+     * --fire-interval MS   shortest interval between shots (500)
+     * --shot-pool N        removed shots kept for reuse (64)
+     * </pre>
+     *
+     * @param option name of the option
+     * @param value value given for the option
+     * @return false if the option isn't one of the above
+     * @throws IllegalArgumentException if the value is invalid
+     */
+    boolean setOption(String option, String value) {
+        if (option.equals("--playfield")) {
+            int[] size = parsePair(value, "x");
+            setPlayfield(size[0], size[1]);
+        } else if (option.equals("--aliens")) {
+            int[] size = parsePair(value, "x");
+            setAliens(size[0], size[1]);
+        } else if (option.equals("--spacing")) {
+            int[] spacing = parsePair(value, ",");
+            setAlienSpacing(spacing[0], spacing[1]);
+        } else if (option.equals("--formations")) {
+            setFormations(Integer.parseInt(value));
+        } else if (option.equals("--fire-interval")) {
+            setFiringInterval(Double.parseDouble(value));
+        } else if (option.equals("--shot-pool")) {
+            setShotPoolCapacity(Integer.parseInt(value));
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param value two integers separated by a separator, e.g. "800x600"
+     * @param separator the separator
+     * @return the integers
+     * @throws IllegalArgumentException if the value isn't in that form
+     */
+    private static int[] parsePair(String value, String separator) {
+        int split = value.indexOf(separator);
+        if (split < 0) {
+            throw new IllegalArgumentException("Expected two numbers separated by '" + separator + "': " + value);
+        }
+        return new int[]{Integer.parseInt(value.substring(0, split).trim()),
+                Integer.parseInt(value.substring(split + separator.length()).trim())};
+    }
+
+    /**
+     * @return number of rows of aliens
+     */
+    public int getAlienRows() {
+        return alienRows;
+    }
+
+    /**
+     * @return number of aliens in each row
+     */
+    public int getAlienColumns() {
+        return alienColumns;
+    }
+
+    /**
+     * Set the size of each wave of aliens.
+     *
+     * @param rows number of rows of aliens
+     * @param columns number of aliens in each row
+     */
+    public void setAliens(int rows, int columns) {
+        if (rows < 1 || columns < 1 || rows > 0xFFFF || columns > 0xFFFF) {
+            throw new IllegalArgumentException("Invalid wave size " + rows + "x" + columns);
+        }
+        this.alienRows = rows;
+        this.alienColumns = columns;
+    }
+
+    /**
+     * @return horizontal distance between aliens (pixels)
+     */
+    public double getAlienSpacingX() {
+        return alienSpacingX;
+    }
+
+    /**
+     * @return vertical distance between rows of aliens (pixels)
+     */
+    public double getAlienSpacingY() {
+        return alienSpacingY;
+    }
+
+    /**
+     * Set the spacing of the wave of aliens.
+     *
+     * @param spacingX horizontal distance between aliens (pixels)
+     * @param spacingY vertical distance between rows (pixels)
+     */
+    public void setAlienSpacing(double spacingX, double spacingY) {
+        if (!(spacingX > 0 && spacingY > 0)) {
+            throw new IllegalArgumentException("Invalid alien spacing " + spacingX + "x" + spacingY);
+        }
+        this.alienSpacingX = spacingX;
+        this.alienSpacingY = spacingY;
+    }
+
+    /**
+     * @return shortest interval between the player's shots (ms)
+     */
+    public double getFiringInterval() {
+        return firingInterval;
+    }
+
+    /**
+     * Set how often the player can fire.  An interval of zero lets the
+     * player fire on every step.
+     *
+     * @param firingInterval shortest interval between shots (ms)
+     */
+    public void setFiringInterval(double firingInterval) {
+        if (!(firingInterval >= 0)) {
+            throw new IllegalArgumentException("Invalid firing interval " + firingInterval);
+        }
+        this.firingInterval = firingInterval;
+    }
+
+    /**
+     * @return maximum number of removed shots kept for reuse
+     */
+    public int getShotPoolCapacity() {
+        return shotPoolCapacity;
+    }
+
+    /**
+     * Set how many removed shots are kept for reuse.  Should be at least
+     * the number of shots in play at once, or firing allocates.
+     *
+     * @param shotPoolCapacity maximum number of shots kept
+     */
+    public void setShotPoolCapacity(int shotPoolCapacity) {
+        if (shotPoolCapacity < 0) {
+            throw new IllegalArgumentException("Invalid shot pool capacity " + shotPoolCapacity);
+        }
+        this.shotPoolCapacity = shotPoolCapacity;
+    }
+}
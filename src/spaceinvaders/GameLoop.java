@@ -0,0 +1,150 @@
+package spaceinvaders;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A fixed timestep game loop running on its own thread.
+ *
+ * Real elapsed time, measured with System.nanoTime(), is accumulated and
+ * consumed in whole simulation steps of a fixed length, so the game rules
+ * always see the same delta no matter how late the thread is woken.
+ * Frames are rendered in between, at most maxFrameRate times a second,
+ * along with the fraction of a step that has elapsed since the last one
+ * so that the renderer can interpolate entity positions.
+ *
+ * @author Tim Vaughan
+ */
+public class GameLoop implements Runnable {
+
+    /**
+     * The object driven by the loop.
+     */
+    public interface Client {
+
+        /**
+         * Advance the game by one fixed step.
+         *
+         * @param delta Length of the step in milliseconds
+         */
+        void tick(double delta);
+
+        /**
+         * Draw the current state of the game.
+         *
+         * @param alpha Fraction of a step elapsed since the last tick (0-1)
+         */
+        void render(double alpha);
+    }
+
+    /**
+     * Most time the loop will try to catch up on after a stall (ns).
+     * Anything beyond this is dropped rather than simulated in a burst.
+     */
+    private static final long MAX_BACKLOG = 250000000L;
+
+    /**
+     * Object being driven.
+     */
+    private final Client client;
+
+    /**
+     * Length of one simulation step (ns).
+     */
+    private final long tickNanos;
+
+    /**
+     * Minimum time between rendered frames (ns).
+     */
+    private final long frameNanos;
+
+    /**
+     * Thread currently running the loop, or null if stopped.
+     */
+    private volatile Thread thread;
+
+    /**
+     * Create a new loop.  The loop does nothing until start() is called.
+     *
+     * @param client Object to tick and render
+     * @param tickRate Number of simulation steps per second
+     * @param maxFrameRate Maximum number of frames rendered per second
+     */
+    public GameLoop(Client client, int tickRate, int maxFrameRate) {
+        this.client = client;
+        this.tickNanos = 1000000000L / tickRate;
+        this.frameNanos = 1000000000L / maxFrameRate;
+    }
+
+    /**
+     * @return length of one simulation step in milliseconds
+     */
+    public double getTickLength() {
+        return tickNanos / 1e6;
+    }
+
+    /**
+     * Start the loop on a new thread.  Has no effect if already running.
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+
+        thread = new Thread(this, "Game loop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Ask the loop to stop.  The loop finishes the tick or frame it is
+     * working on and its thread then exits.  Safe to call from the loop
+     * itself.
+     */
+    public synchronized void stop() {
+        thread = null;
+    }
+
+    /**
+     * @return true if the loop is running
+     */
+    public boolean isRunning() {
+        return thread != null;
+    }
+
+    /**
+     * Body of the loop thread.
+     */
+    @Override
+    public void run() {
+        double delta = getTickLength();
+
+        long lastTime = System.nanoTime();
+        long accumulator = 0;
+
+        while (thread == Thread.currentThread()) {
+            long now = System.nanoTime();
+            accumulator = Math.min(accumulator + now - lastTime, MAX_BACKLOG);
+            lastTime = now;
+
+            while (accumulator >= tickNanos && thread == Thread.currentThread()) {
+                client.tick(delta);
+                accumulator -= tickNanos;
+            }
+
+            if (thread != Thread.currentThread()) {
+                break;
+            }
+
+            client.render((double) accumulator / tickNanos);
+
+            // sleep until the next frame is due, or the next tick if
+            // that comes sooner
+            long frameEnd = now + frameNanos;
+            long nextTick = now + tickNanos - accumulator;
+            long wake = Math.min(frameEnd, nextTick);
+            while (System.nanoTime() < wake && thread == Thread.currentThread()) {
+                LockSupport.parkNanos(wake - System.nanoTime());
+            }
+        }
+    }
+}
@@ -1,115 +1,189 @@
 package spaceinvaders;
 
-import java.awt.Color;
+import java.awt.BorderLayout;
+import java.awt.Canvas;
 import java.awt.Dimension;
-import java.awt.Font;
 import java.awt.Graphics;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
+import java.awt.Rectangle;
+import java.awt.Toolkit;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
-import java.util.ArrayList;
+import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Paths;
+import java.util.function.BiConsumer;
+import javax.management.JMException;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
-import javax.swing.Timer;
+import javax.swing.JPopupMenu;
+import javax.swing.SwingUtilities;
+import jdk.jfr.EventType;
 
 /**
- * The main hook of our game. This class with both act as a manager for the
- * display and central mediator for the game logic.
+ * The main hook of our game. This class acts as the display and input
+ * adapter for a GameWorld, which holds the game state and rules.
  *
- * Display management will consist of a loop that cycles round all entities in
- * the game asking them to move and then drawing them in the appropriate place.
- * With the help of an inner class it will also allow the player to control the
- * main ship.
+ * Display management will consist of a loop that cycles round asking the
+ * world to advance and then drawing all of its entities in the appropriate
+ * place. With the help of an inner class it will also allow the player to
+ * control the main ship.
  *
- * As a mediator it will be informed when entities within our game detect events
- * (e.g. alien killed, played died) and will take appropriate game actions.
+ * The world is advanced at a fixed rate by a GameLoop running on its own
+ * thread, so all access to the world is synchronized on it.
+ *
+ * Frames are normally drawn passively, by asking Swing to repaint the
+ * panel.  Setting -Dspaceinvaders.activeRendering=true instead places a
+ * Canvas in the panel and draws directly into its BufferStrategy from the
+ * game loop, which gives deterministic presentation timing.  Setting
+ * -Dspaceinvaders.frameStats=true prints frame timing statistics every
+ * few seconds in either mode.
+ *
+ * Frames are drawn by a GameRenderer, which works out which parts of the
+ * screen have changed since the last frame: the areas covered by entities
+ * before and after they moved, plus the score when it changes.  In
+ * passive mode just those areas are repainted, and in active mode they
+ * are redrawn into an offscreen frame which is then copied to the
+ * screen.  Setting
+ * -Dspaceinvaders.showDirtyRegions=true outlines the redrawn areas.
+ *
+ * Setting -Dspaceinvaders.recordInput=file records the player's input
+ * during each game, and writes it to the file when the game ends so that
+ * it can be checked with Replay.  Setting -Dspaceinvaders.recordReplay=file
+ * records the state of the game after every tick to a replay file, which
+ * can be browsed with ReplayReader.
+ *
+ * The phases of each tick and the painting of each frame are timed into
+ * a TickStats, published over JMX as "spaceinvaders:type=TickStats".
+ * Ticks, frames and sprite loads are also emitted as flight recorder
+ * events (TickEvent, PaintEvent and SpriteLoadEvent).
  *
  * @author Kevin Glass
  */
 public class GamePanel extends JPanel {
     
     /**
-     * The list of all the entities that exist in our game
+     * Flight recorder type of the paint event, checked before creating
+     * one so that frames allocate nothing while it isn't being recorded
      */
-    private final ArrayList<Entity> entities = new ArrayList<Entity>();
-
+    private static final EventType PAINT_EVENT = EventType.getEventType(PaintEvent.class);
+    
     /**
-     * The list of entities that need to be removed from the game this loop
+     * The state and rules of the game being displayed
      */
-    private final ArrayList removeList = new ArrayList();
+    private final GameWorld world = new GameWorld();
+    
+    /**
+     * Set to true if a game is in progress.
+     */
+    private volatile boolean gameInProgress = false;
 
     /**
-     * The entity representing the player
+     * True if the left cursor key is currently pressed
      */
-    private Entity ship;
+    private volatile boolean leftPressed = false;
 
     /**
-     * The speed at which the player's ship should move (pixels/sec)
+     * True if the right cursor key is currently pressed
      */
-    private final double moveSpeed = 300;
+    private volatile boolean rightPressed = false;
 
     /**
-     * The time at which last fired a shot
+     * True if we are firing
      */
-    private long lastFire = 0;
+    private volatile boolean firePressed = false;
 
     /**
-     * The interval between our players shot (ms)
+     * Loop used to run game.
      */
-    private final long firingInterval = 500;
+    private final GameLoop loop;
     
     /**
-     * The number of aliens left on the screen
+     * Fraction of a step elapsed since the last tick when the most recent
+     * frame was requested.  Used to interpolate entity positions.
      */
-    private int alienCount;
+    private volatile double renderAlpha;
     
     /**
-     * Set to true if an alien reaches the bottom of the screen or
-     * collides with the player's ship.
+     * Canvas drawn into when active rendering is enabled, otherwise null.
      */
-    private boolean humansDead = false;
+    private final Canvas canvas;
     
     /**
-     * Set to true if a game is in progress.
+     * Buffer strategy used to draw into canvas, created on first use.
      */
-    private boolean gameInProgress = false;
-
+    private BufferStrategy strategy;
+    
     /**
-     * True if the left cursor key is currently pressed
+     * Complete frame, updated a piece at a time, when active rendering
+     * is enabled.  Created on first use.
      */
-    private boolean leftPressed = false;
-
+    private BufferedImage frame;
+    
     /**
-     * True if the right cursor key is currently pressed
+     * Draws the world, keeping track of which areas need redrawing.
      */
-    private boolean rightPressed = false;
-
+    private final GameRenderer renderer;
+    
     /**
-     * True if we are firing
+     * Set while a repaint of the whole panel requested by the game loop
+     * is outstanding, to tell it apart from one requested by the system.
      */
-    private boolean firePressed = false;
-
+    private boolean fullRepaintRequested;
+    
+    /**
+     * Reusable clip rectangle.
+     */
+    private final Rectangle clipBounds = new Rectangle();
+    
+    /**
+     * Timing of the phases of each tick and of painting, published as
+     * an MBean.
+     */
+    private final TickStats tickStats = new TickStats();
+    
+    /**
+     * Frame timing statistics for the current reporting window.
+     */
+    private final FrameStats frameStats = new FrameStats();
+    
+    /**
+     * True if frame timing statistics should be printed.
+     */
+    private final boolean reportFrameStats = Boolean.getBoolean("spaceinvaders.frameStats");
+    
     /**
-     * True if game logic needs to be applied this loop, normally as a result of
-     * a game event
+     * Length of each frame statistics reporting window (ns).
      */
-    private boolean logicRequiredThisLoop = false;
+    private static final long FRAME_STATS_WINDOW = 5000000000L;
     
     /**
-     * Timer used to run game.
+     * File to write the input log of each game to, or null.
      */
-    private final Timer timer;
+    private final String recordInputFile = System.getProperty("spaceinvaders.recordInput");
     
     /**
-     * Keeps track of score, which is defined as the number of game
-     * iterations required to kill all of the aliens.
+     * Input log of the current game, or null if not recording.
      */
-    private int iterations;
+    private InputLog inputLog;
     
     /**
-     * Fonts used on game panel.
+     * File to write a replay of each game to, or null.
      */
-    private final Font titleFont1, titleFont2, bigFont, scoreFont;
+    private final String recordReplayFile = System.getProperty("spaceinvaders.recordReplay");
+    
+    /**
+     * Maximum number of ticks between keyframes in replay files.
+     */
+    private static final int REPLAY_KEYFRAME_INTERVAL = 300;
+    
+    /**
+     * Replay of the current game, or null if not recording.
+     */
+    private ReplayWriter replayWriter;
     
     /**
      * App this panel belongs to.
@@ -128,27 +202,89 @@ public class GamePanel extends JPanel {
         // setup our canvas size and put it into the content of the frame
         setBounds(0, 0, 800, 600);
 
+        if (Boolean.getBoolean("spaceinvaders.activeRendering")) {
+            // draw into a heavyweight canvas, redrawing it ourselves
+            // whenever AWT asks for it while the loop isn't running
+            canvas = new Canvas() {
+                @Override
+                public void paint(Graphics g) {
+                    if (!loop.isRunning()) {
+                        renderActiveFrame(1.0);
+                    }
+                }
+
+                @Override
+                public void update(Graphics g) {
+                    paint(g);
+                }
+            };
+            canvas.setPreferredSize(new Dimension(800, 600));
+            setLayout(new BorderLayout());
+            add(canvas, BorderLayout.CENTER);
+            
+            // keep menus from disappearing behind the canvas
+            JPopupMenu.setDefaultLightWeightPopupEnabled(false);
+        } else {
+            canvas = null;
+        }
+
         // add a key input system (defined below) to our canvas
         // so we can respond to key pressed
-        addKeyListener(new KeyInputHandler());
+        if (canvas != null) {
+            canvas.addKeyListener(new KeyInputHandler());
+        } else {
+            addKeyListener(new KeyInputHandler());
+        }
+
+        // Set up loop that calls the game iteration method at a fixed
+        // rate and repaints the panel in between.
+        loop = new GameLoop(new GameLoop.Client() {
+            @Override
+            public void tick(double delta) {
+                gameIterate(delta);
+            }
 
-		// initialise the entities in our game so there's something
-        // to see at startup
-        initEntities();
+            @Override
+            public void render(double alpha) {
+                if (canvas != null) {
+                    renderActiveFrame(alpha);
+                } else {
+                    renderAlpha = alpha;
+                    repaintDirtyRegions(alpha);
+                }
+            }
+        }, Integer.getInteger("spaceinvaders.tickRate", 60),
+                Integer.getInteger("spaceinvaders.frameRate", 120));
         
-        // Set up timer that calls the game iteration method.
-        timer = new Timer(100, new ActionListener() {
+        // Start loading the sprites in the background.  Until they arrive
+        // entities are simply not drawn, so redraw once they have.
+        SpriteStore.get().preload(GameWorld.SPRITES).whenComplete(new BiConsumer<Void, Throwable>() {
             @Override
-            public void actionPerformed(ActionEvent e) {
-                gameIterate(100);
+            public void accept(Void result, final Throwable failure) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (failure != null) {
+                            spritesFailed(failure.getCause() != null ? failure.getCause() : failure);
+                        } else {
+                            redraw();
+                        }
+                    }
+                });
             }
         });
         
-        // Set up fonts:
-        titleFont1 = new Font(Font.SANS_SERIF, Font.BOLD, 40);
-        titleFont2 = new Font(Font.SANS_SERIF, Font.PLAIN, 40);
-        bigFont = new Font(Font.SANS_SERIF, Font.BOLD, 100);
-        scoreFont = new Font(Font.SANS_SERIF, Font.PLAIN, 20);
+        // Set up the renderer, which pre-renders the text it draws:
+        renderer = new GameRenderer(world);
+        renderer.setShowDirtyRegions(Boolean.getBoolean("spaceinvaders.showDirtyRegions"));
+        
+        // Time the game and publish the results:
+        world.setTickStats(tickStats);
+        try {
+            tickStats.register();
+        } catch (JMException e) {
+            System.err.println("Failed to publish tick statistics: " + e.getMessage());
+        }
         
         // Record app object:
         this.app = app;
@@ -156,7 +292,6 @@ public class GamePanel extends JPanel {
 
     /**
      * Paint the panel.  Called whenever the panel needs to be redrawn.
-     * Displays relevant game messages when game is not running.
      * 
      * @param g 
      */
@@ -164,130 +299,226 @@ public class GamePanel extends JPanel {
     public void paintComponent(Graphics g) {
         super.paintComponent(g);
         
-        g.setColor(Color.black);
-        g.fillRect(0, 0, 800, 600);
-
-        for (Entity entity : entities) {
-            entity.draw(g);
+        if (canvas != null) {
+            return;
         }
         
-        if (gameInProgress) {
-            if (!timer.isRunning()) {
-                g.setFont(bigFont);
-                g.setColor(Color.white);
-                g.drawString("PAUSED", 200, 300);
+        // only interpolate while the game is actually moving
+        double alpha = loop.isRunning() ? renderAlpha : 1.0;
+        
+        PaintEvent event = PAINT_EVENT.isEnabled() ? new PaintEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        
+        long start = System.nanoTime();
+        synchronized (world) {
+            // a repaint of the whole panel we didn't ask for may have drawn
+            // things in different places from those we were tracking
+            clipBounds.setBounds(0, 0, 800, 600);
+            g.getClipBounds(clipBounds);
+            if (clipBounds.width >= 800 && clipBounds.height >= 600) {
+                if (!fullRepaintRequested) {
+                    renderer.redrawAll();
+                }
+                fullRepaintRequested = false;
             }
-        } else {
-            if (isGameOverConditionMet()) {
-                g.setFont(bigFont);
-                g.setColor(Color.yellow);
-                g.drawString("GAME OVER", 50, 300);
-            } else {
-                g.setFont(titleFont1);
-                g.setColor(Color.yellow);
-                g.drawString("SPACE INVADERS", 200, 250);
-                g.setFont(titleFont2);
-                g.setColor(Color.white);
-                g.drawString("Use Ctrl-N to begin new game.", 80, 350);
+            
+            renderer.drawFrame(g, alpha, getOverlay());
+            if (renderer.isShowingDirtyRegions()) {
+                renderer.outlineDirtyRegions(g);
+            }
+            
+            // Swing merges the requested regions into a single clip
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.active = false;
+                    event.regions = 1;
+                    event.area = (long) clipBounds.width * clipBounds.height;
+                    event.entities = world.getEntityStore().size();
+                    event.commit();
+                }
             }
         }
-        
-        g.setFont(scoreFont);
-        g.setColor(Color.white);
-        g.drawString("Score: " + getScore(), 600, 20);
+        recordFrame(start, System.nanoTime());
     }
     
-
     /**
-     * Initialise the starting state of the entities (ship and aliens). Each
-     * entity will be added to the overall list of entities in the game.
+     * Work out which areas have changed and ask Swing to repaint them.
+     * Called from the game loop in passive mode.
+     * 
+     * @param alpha Fraction of a step elapsed since the last tick (0-1)
      */
-    private void initEntities() {
-        // clear out any existing entities and intialise a new set
-        entities.clear();
-        
-        // create the player ship and place it roughly in the center of the screen
-        ship = new ShipEntity(this, "sprites/ship.gif", 370, 550);
-        entities.add(ship);
-
-        // create a block of aliens (5 rows, by 12 aliens, spaced evenly)
-        alienCount = 0;
-        for (int row = 0; row < 5; row++) {
-            for (int x = 0; x < 12; x++) {
-                Entity alien = new AlienEntity(this, "sprites/alien.gif", 100 + (x * 50), (50) + row * 30);
-                entities.add(alien);
-                alienCount++;
+    private void repaintDirtyRegions(double alpha) {
+        synchronized (world) {
+            DirtyRegions dirtyRegions = renderer.collectDirtyRegions(alpha, getOverlay());
+            
+            for (int i = 0; i < dirtyRegions.size(); i++) {
+                int w = dirtyRegions.getWidth(i), h = dirtyRegions.getHeight(i);
+                if (w >= 800 && h >= 600) {
+                    fullRepaintRequested = true;
+                }
+                repaint(dirtyRegions.getX(i), dirtyRegions.getY(i), w, h);
             }
         }
-
-    }
-
-    /**
-     * Notification from a game entity that the logic of the game should be run
-     * at the next opportunity (normally as a result of some game event)
-     */
-    public void updateLogic() {
-        logicRequiredThisLoop = true;
     }
-
+    
     /**
-     * Remove an entity from the game. The entity removed will no longer move or
-     * be drawn.
-     *
-     * @param entity The entity that should be removed
+     * @return which message is drawn over the game, one of the
+     * GameRenderer.OVERLAY_ constants
      */
-    public void removeEntity(Entity entity) {
-        removeList.add(entity);
+    private int getOverlay() {
+        if (gameInProgress) {
+            return loop.isRunning() ? GameRenderer.OVERLAY_NONE : GameRenderer.OVERLAY_PAUSED;
+        }
+        return world.isGameOverConditionMet() ? GameRenderer.OVERLAY_GAME_OVER : GameRenderer.OVERLAY_TITLE;
     }
-
+    
     /**
-     * Notification that an alien has been killed
+     * Draw a frame into the canvas's buffer strategy and show it.  Called
+     * from the game loop while it is running, and from the event dispatch
+     * thread otherwise.
+     * 
+     * @param alpha Fraction of a step elapsed since the last tick (0-1)
      */
-    public void notifyAlienKilled() {
-        // reduce the alient count, if there are none left, the player has won!
-        alienCount--;
-
-        if (alienCount == 0) {
+    private void renderActiveFrame(double alpha) {
+        if (!canvas.isDisplayable()) {
             return;
         }
-
-        for (Entity entity : entities) {
-            if (entity instanceof AlienEntity) {
-                // speed up by 2%
-                entity.setHorizontalMovement(entity.getHorizontalMovement() * 1.02);
+        
+        // holding the world lock also stops the loop and the event
+        // dispatch thread drawing at the same time
+        synchronized (world) {
+            if (strategy == null) {
+                canvas.createBufferStrategy(2);
+                strategy = canvas.getBufferStrategy();
+            }
+            
+            PaintEvent event = PAINT_EVENT.isEnabled() ? new PaintEvent() : null;
+            if (event != null) {
+                event.begin();
+            }
+            
+            long start = System.nanoTime();
+            
+            // bring the offscreen frame up to date, one dirty region at
+            // a time
+            if (frame == null) {
+                frame = canvas.getGraphicsConfiguration().createCompatibleImage(800, 600);
+                renderer.redrawAll();
+            }
+            renderer.render(frame, alpha, getOverlay());
+            
+            do {
+                do {
+                    Graphics g = strategy.getDrawGraphics();
+                    try {
+                        g.drawImage(frame, 0, 0, null);
+                    } finally {
+                        g.dispose();
+                    }
+                } while (strategy.contentsRestored());
+                
+                strategy.show();
+            } while (strategy.contentsLost());
+            
+            // make sure the frame is actually on screen before timing it
+            Toolkit.getDefaultToolkit().sync();
+            recordFrame(start, System.nanoTime());
+            
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.active = true;
+                    event.regions = renderer.getDirtyRegions().size();
+                    event.area = renderer.getDirtyRegions().getArea();
+                    event.entities = world.getEntityStore().size();
+                    event.commit();
+                }
             }
         }
     }
     
     /**
-     * Notification that an alien has landed
+     * Add a presented frame to the frame statistics, printing and
+     * restarting them at the end of each reporting window.
+     * 
+     * @param drawStart time drawing of the frame began (ns)
+     * @param present time the frame was presented (ns)
      */
-    public void notifyHumansDead() {
-        humansDead = true;
+    private void recordFrame(long drawStart, long present) {
+        tickStats.recordPhase(TickStats.PAINT, present - drawStart);
+        
+        synchronized (frameStats) {
+            frameStats.record(drawStart, present);
+            
+            if (frameStats.getWindowLength() >= FRAME_STATS_WINDOW) {
+                if (reportFrameStats) {
+                    System.out.println("Frame stats: " + frameStats);
+                }
+                frameStats.reset();
+            }
+        }
     }
-
+    
     /**
-     * Attempt to fire a shot from the player. Its called "try" since we must
-     * first check that the player can fire at this point, i.e. has he/she
-     * waited long enough between shots
+     * Ask for the game to be redrawn outside of the game loop, e.g. to
+     * show a change in the displayed message.
      */
-    public void tryToFire() {
-        // check that we have waiting long enough to fire
-        if (System.currentTimeMillis() - lastFire < firingInterval) {
-            return;
+    private void redraw() {
+        if (canvas != null) {
+            canvas.repaint();
+        } else {
+            repaint();
         }
-
-        // if we waited long enough, create the shot entity, and record the time.
-        lastFire = System.currentTimeMillis();
-        ShotEntity shot = new ShotEntity(this, "sprites/shot.gif", ship.getX() + 10, ship.getY() - 30);
-        entities.add(shot);
     }
     
+    /**
+     * Report a sprite which couldn't be loaded and quit, as there's no
+     * way to play without it.
+     * 
+     * @param failure the reason loading failed
+     */
+    private void spritesFailed(Throwable failure) {
+        failure.printStackTrace();
+        JOptionPane.showMessageDialog(app, failure.getMessage(),
+                "Space Invaders", JOptionPane.ERROR_MESSAGE);
+        System.exit(1);
+    }
+    
+    /**
+     * Direct keyboard focus to whichever component receives key events.
+     */
+    @Override
+    public void requestFocus() {
+        if (canvas != null) {
+            canvas.requestFocus();
+        } else {
+            super.requestFocus();
+        }
+    }
+
     /**
      * Start a fresh game.
      */
     public void startGame() {
-        initEntities();
+        synchronized (world) {
+            world.reset();
+            inputLog = recordInputFile != null ? new InputLog(loop.getTickLength()) : null;
+            
+            closeReplay();
+            if (recordReplayFile != null) {
+                try {
+                    replayWriter = new ReplayWriter(Paths.get(recordReplayFile),
+                            loop.getTickLength(), REPLAY_KEYFRAME_INTERVAL);
+                    replayWriter.append(world);
+                } catch (IOException e) {
+                    System.err.println("Failed to record replay: " + e.getMessage());
+                    closeReplay();
+                }
+            }
+        }
 
         // blank out any keyboard settings we might currently have
         leftPressed = false;
@@ -296,36 +527,39 @@ public class GamePanel extends JPanel {
 
         // Initialise game flags:
         gameInProgress = true;
-        humansDead = false;
         
-        // Reset score
-        iterations = 0;
-        
-        // Start timer that iterates the game state
-        timer.start();
+        // Start loop that iterates the game state
+        loop.start();
     }
     
     /**
      * Stop/pause the game.
      */
     public void pauseGame() {
-        if (timer.isRunning()) {
-            timer.stop();
+        if (loop.isRunning()) {
+            loop.stop();
             
-            repaint(); // Trigger repaint to display PAUSED message.
+            redraw(); // Trigger repaint to display PAUSED message.
         } else
-            timer.start();
+            loop.start();
     }
         
     /**
-     * Display wining/loosing message then reset game.
+     * Display wining/loosing message then reset game.  Called from the
+     * game loop, so the message itself is left to the event dispatch
+     * thread.
      */
     private void endGame() {
-        timer.stop();
+        loop.stop();
         gameInProgress = false;
         
-
-        app.gameEnded();
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                redraw();
+                app.gameEnded();
+            }
+        });
     }
         
     /**
@@ -335,11 +569,15 @@ public class GamePanel extends JPanel {
      * @return true if condition is met.
      */
     public boolean isGameOverConditionMet() {
-        return alienCount == 0 || humansDead;
+        synchronized (world) {
+            return world.isGameOverConditionMet();
+        }
     }
     
     public boolean isGameWon() {
-        return !humansDead;
+        synchronized (world) {
+            return world.isGameWon();
+        }
     }
     
     /**
@@ -347,82 +585,108 @@ public class GamePanel extends JPanel {
      * @return game score
      */
     public int getScore() {
-        return iterations > 500 ? 0 : (500 - iterations)*500;
+        synchronized (world) {
+            return world.getScore();
+        }
     }
 
     
     /**
      * Iterate game state.  This method is responsible for:
      * <p>
-     * - Moving the game entities
-     * - Drawing the screen contents (entities, text)
-     * - Updating game events
-     * - Checking game Input
+     * - Passing the player's input on to the game world
+     * - Advancing the game world
      * <p>
+     * Drawing is left to the game loop, which renders frames in between
+     * iterations.
+     * 
      * @param delta Number of milliseconds to increment state by.
      */
-    public void gameIterate(long delta) {
+    public void gameIterate(double delta) {
         
-        // Increment score:
-        iterations += 1;
-
-        // cycle round asking each entity to move itself
-        for (Entity entity : entities) {
-            entity.move(delta);
+        int input = 0;
+        if (leftPressed) {
+            input |= GameWorld.INPUT_LEFT;
         }
-
-        // brute force collisions, compare every entity against
-        // every other entity. If any of them collide notify 
-        // both entities that the collision has occured
-        for (int p = 0; p < entities.size(); p++) {
-            for (int s = p + 1; s < entities.size(); s++) {
-                Entity me = (Entity) entities.get(p);
-                Entity him = (Entity) entities.get(s);
-                
-                if (me.collidesWith(him)) {
-                    me.collidedWith(him);
-                    him.collidedWith(me);
-                }
-            }
+        if (rightPressed) {
+            input |= GameWorld.INPUT_RIGHT;
+        }
+        if (firePressed) {
+            input |= GameWorld.INPUT_FIRE;
         }
-
-        // remove any entity that has been marked for clear up
-        entities.removeAll(removeList);
-        removeList.clear();
         
-        // if a game event has indicated that game logic should
-        // be resolved, cycle round every entity requesting that
-        // their personal logic should be considered.
-        if (logicRequiredThisLoop) {
-            for (Entity entity : entities) {
-                entity.doLogic();
+        boolean over;
+        synchronized (world) {
+            if (inputLog != null) {
+                inputLog.record(world.getIterations(), input);
             }
+            world.step(delta, input);
+            over = world.isGameOverConditionMet();
             
-            logicRequiredThisLoop = false;
+            if (replayWriter != null) {
+                try {
+                    replayWriter.append(world);
+                } catch (IOException e) {
+                    System.err.println("Failed to record replay: " + e.getMessage());
+                    closeReplay();
+                }
+            }
+            
+            if (over) {
+                if (inputLog != null) {
+                    inputLog.finish(world);
+                    writeInputLog(inputLog);
+                    inputLog = null;
+                }
+                closeReplay();
+            }
         }
         
-        // Force component to repaint itself following entity movement.
-        repaint();
-        
-        if (isGameOverConditionMet()) {
+        if (over) {
             endGame();
-            return;
         }
+    }
 
-        // resolve the movement of the ship. First assume the ship 
-        // isn't moving. If either cursor key is pressed then
-        // update the movement appropraitely
-        ship.setHorizontalMovement(0);
+    /**
+     * Write the input log of a finished game to the file it is being
+     * recorded to.
+     * 
+     * @param log the input log
+     */
+    private void writeInputLog(InputLog log) {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(recordInputFile))) {
+            log.write(out);
+        } catch (IOException e) {
+            System.err.println("Failed to write input log: " + e.getMessage());
+        }
+    }
 
-        if ((leftPressed) && (!rightPressed)) {
-            ship.setHorizontalMovement(-moveSpeed);
-        } else if ((rightPressed) && (!leftPressed)) {
-            ship.setHorizontalMovement(moveSpeed);
+    /**
+     * Finish writing the replay of the current game, if one is being
+     * recorded.  The caller must hold the world lock.
+     */
+    private void closeReplay() {
+        if (replayWriter == null) {
+            return;
         }
         
-        // if we're pressing fire, attempt to fire
-        if (firePressed) {
-            tryToFire();
+        try {
+            replayWriter.close();
+        } catch (IOException e) {
+            System.err.println("Failed to write replay: " + e.getMessage());
+        }
+        replayWriter = null;
+    }
+
+    /**
+     * Choose whether collisions are found by brute force or by using the
+     * collision grid.
+     * 
+     * @param bruteForceCollisions true to test every interacting pair of entities
+     */
+    public void setBruteForceCollisions(boolean bruteForceCollisions) {
+        synchronized (world) {
+            world.setBruteForceCollisions(bruteForceCollisions);
         }
     }
 
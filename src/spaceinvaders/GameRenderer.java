@@ -0,0 +1,277 @@
+package spaceinvaders;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * Draws a GameWorld: the entities, the score and whichever message is
+ * shown over the game.  Doesn't depend on a window, so frames can be
+ * drawn into any image, e.g. by GamePanel or by a benchmark.
+ *
+ * Only the parts of the screen which have changed since the last frame
+ * are redrawn: the areas covered by entities before and after they moved,
+ * plus the score when it changes.  collectDirtyRegions() works these out,
+ * and drawFrame() then redraws whatever lies inside the clip, so a frame
+ * is brought up to date by drawing it once for each region.
+ *
+ * The renderer keeps track of what was drawn last, so all calls must be
+ * made holding the world lock.
+ *
+ * @author Tim Vaughan
+ */
+public class GameRenderer {
+
+    /**
+     * Messages which can be shown over the game.
+     */
+    public static final int OVERLAY_NONE = 0, OVERLAY_PAUSED = 1,
+            OVERLAY_GAME_OVER = 2, OVERLAY_TITLE = 3;
+
+    /**
+     * Maximum number of separate regions redrawn in a frame.
+     */
+    private static final int MAX_REGIONS = 16;
+
+    /**
+     * World being drawn.
+     */
+    private final GameWorld world;
+
+    /**
+     * Size of the screen in pixels.
+     */
+    private final int width, height;
+
+    /**
+     * Areas of the screen to be redrawn for the most recent frame.
+     */
+    private final DirtyRegions dirtyRegions;
+
+    /**
+     * Areas outlined on the previous frame when showing dirty regions,
+     * which need to be redrawn to remove the outlines.
+     */
+    private final DirtyRegions shownRegions;
+
+    /**
+     * Keeps track of which entities have changed since the last frame.
+     */
+    private final DirtyTracker dirtyTracker = new DirtyTracker();
+
+    /**
+     * True if the areas redrawn in each frame should be outlined.
+     */
+    private boolean showDirtyRegions;
+
+    /**
+     * Set when the whole screen needs to be redrawn in the next frame.
+     */
+    private boolean redrawAll = true;
+
+    /**
+     * Message overlay and score drawn in the previous frame.
+     */
+    private int lastOverlay = -1, lastScore = -1;
+
+    /**
+     * Reusable clip rectangle.
+     */
+    private final Rectangle clipBounds = new Rectangle();
+
+    /**
+     * Pre-rendered text drawn over the game.
+     */
+    private final TextLayer titleText, instructionsText, pausedText, gameOverText;
+
+    /**
+     * Pre-rendered score display.
+     */
+    private final ScoreLayer scoreText;
+
+    /**
+     * Create a renderer for a world.
+     *
+     * @param world the world to draw
+     */
+    public GameRenderer(GameWorld world) {
+        this.world = world;
+        this.width = world.getWidth();
+        this.height = world.getHeight();
+
+        dirtyRegions = new DirtyRegions(width, height, MAX_REGIONS);
+        shownRegions = new DirtyRegions(width, height, MAX_REGIONS);
+
+        // Set up fonts and render the text drawn with them:
+        Font titleFont1 = new Font(Font.SANS_SERIF, Font.BOLD, 40);
+        Font titleFont2 = new Font(Font.SANS_SERIF, Font.PLAIN, 40);
+        Font bigFont = new Font(Font.SANS_SERIF, Font.BOLD, 100);
+        Font scoreFont = new Font(Font.SANS_SERIF, Font.PLAIN, 20);
+
+        titleText = new TextLayer("SPACE INVADERS", titleFont1, Color.yellow);
+        instructionsText = new TextLayer("Use Ctrl-N to begin new game.", titleFont2, Color.white);
+        pausedText = new TextLayer("PAUSED", bigFont, Color.white);
+        gameOverText = new TextLayer("GAME OVER", bigFont, Color.yellow);
+        scoreText = new ScoreLayer("Score: ", scoreFont, Color.white);
+    }
+
+    /**
+     * Choose whether the areas redrawn in each frame are outlined.
+     *
+     * @param showDirtyRegions true to outline redrawn areas
+     */
+    public void setShowDirtyRegions(boolean showDirtyRegions) {
+        this.showDirtyRegions = showDirtyRegions;
+    }
+
+    /**
+     * @return true if the areas redrawn in each frame are outlined
+     */
+    public boolean isShowingDirtyRegions() {
+        return showDirtyRegions;
+    }
+
+    /**
+     * Make the next frame redraw the whole screen, e.g. because what is
+     * on the screen is no longer what was drawn.
+     */
+    public void redrawAll() {
+        redrawAll = true;
+    }
+
+    /**
+     * @return areas of the screen to be redrawn, as worked out by the
+     * last call to collectDirtyRegions()
+     */
+    public DirtyRegions getDirtyRegions() {
+        return dirtyRegions;
+    }
+
+    /**
+     * Work out which areas of the screen need to be redrawn in the next
+     * frame.
+     *
+     * @param alpha Fraction of a step elapsed since the last tick (0-1)
+     * @param overlay Message to show, one of the OVERLAY_ constants
+     * @return the areas to redraw
+     */
+    public DirtyRegions collectDirtyRegions(double alpha, int overlay) {
+        dirtyRegions.clear();
+        dirtyTracker.update(world.getEntityStore(), alpha, dirtyRegions);
+
+        // messages cover much of the screen, so just redraw everything
+        // when they change
+        if (overlay != lastOverlay) {
+            lastOverlay = overlay;
+            redrawAll = true;
+        }
+
+        int score = world.getScore();
+        if (score != lastScore) {
+            lastScore = score;
+            dirtyRegions.add(width - 200, 20 - scoreText.getAscent(),
+                    scoreText.getWidth(), scoreText.getHeight());
+        }
+
+        if (showDirtyRegions) {
+            dirtyRegions.add(shownRegions);
+        }
+
+        if (redrawAll) {
+            dirtyRegions.addAll();
+            redrawAll = false;
+        }
+
+        dirtyRegions.merge();
+
+        if (showDirtyRegions) {
+            shownRegions.set(dirtyRegions);
+        }
+
+        return dirtyRegions;
+    }
+
+    /**
+     * Bring a complete frame up to date, redrawing just the areas which
+     * have changed since it was last rendered.
+     *
+     * @param frame Image holding the frame
+     * @param alpha Fraction of a step elapsed since the last tick (0-1)
+     * @param overlay Message to show, one of the OVERLAY_ constants
+     */
+    public void render(BufferedImage frame, double alpha, int overlay) {
+        collectDirtyRegions(alpha, overlay);
+
+        Graphics2D g = frame.createGraphics();
+        for (int i = 0; i < dirtyRegions.size(); i++) {
+            g.setClip(dirtyRegions.getX(i), dirtyRegions.getY(i),
+                    dirtyRegions.getWidth(i), dirtyRegions.getHeight(i));
+            drawFrame(g, alpha, overlay);
+        }
+        if (showDirtyRegions) {
+            g.setClip(null);
+            outlineDirtyRegions(g);
+        }
+        g.dispose();
+    }
+
+    /**
+     * Draw the game along with a message.  Only the area inside the clip
+     * of the graphics context is drawn, and entities lying outside it are
+     * skipped entirely.
+     *
+     * @param g Graphics context to draw on
+     * @param alpha Fraction of a step elapsed since the last tick (0-1)
+     * @param overlay Message to show, one of the OVERLAY_ constants
+     */
+    public void drawFrame(Graphics g, double alpha, int overlay) {
+        // only the area inside the clip needs drawing
+        clipBounds.setBounds(0, 0, width, height);
+        g.getClipBounds(clipBounds);
+
+        g.setColor(Color.black);
+        g.fillRect(clipBounds.x, clipBounds.y, clipBounds.width, clipBounds.height);
+
+        SpriteStore sprites = SpriteStore.get();
+        sprites.validate();
+        EntityStore store = world.getEntityStore();
+        for (int i = 0; i < store.size(); i++) {
+            Entity entity = store.getEntity(i);
+            int x = entity.getRenderX(alpha), y = entity.getRenderY(alpha);
+            if (clipBounds.intersects(x, y, entity.getWidth(), entity.getHeight())) {
+                sprites.getSprite(entity.getSpriteRef()).draw(g, x, y);
+            }
+        }
+
+        switch (overlay) {
+            case OVERLAY_PAUSED:
+                pausedText.draw(g, 200, 300);
+                break;
+            case OVERLAY_GAME_OVER:
+                gameOverText.draw(g, 50, 300);
+                break;
+            case OVERLAY_TITLE:
+                titleText.draw(g, 200, 250);
+                instructionsText.draw(g, 80, 350);
+                break;
+        }
+
+        scoreText.draw(g, width - 200, 20, world.getScore());
+    }
+
+    /**
+     * Outline the areas redrawn for the most recent frame.
+     *
+     * @param g Graphics context to draw on
+     */
+    public void outlineDirtyRegions(Graphics g) {
+        g.setColor(Color.red);
+        for (int i = 0; i < shownRegions.size(); i++) {
+            g.drawRect(shownRegions.getX(i), shownRegions.getY(i),
+                    shownRegions.getWidth(i) - 1, shownRegions.getHeight(i) - 1);
+        }
+    }
+}
@@ -0,0 +1,940 @@
+package spaceinvaders;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import jdk.jfr.EventType;
+
+/**
+ * The state and rules of a single game, independent of any display.
+ *
+ * The world holds every entity in the game and advances them through
+ * time when step() is called with the elapsed time and the current state
+ * of the player's controls.  It also acts as the central mediator for the
+ * game logic: entities inform it when they detect events (e.g. alien
+ * killed, player died) and it takes the appropriate game actions.
+ *
+ * Nothing in here depends on AWT or Swing, so games can be run as fast
+ * as the CPU allows on a headless machine.  GamePanel is simply an
+ * input adapter sitting on top of a world, which it draws with a
+ * GameRenderer.
+ *
+ * The size of the playfield, the formations of aliens and the rate of
+ * fire are taken from a GameConfig, which by default describes the
+ * standard game.
+ *
+ * @author Kevin Glass
+ * @author Tim Vaughan
+ */
+public class GameWorld {
+
+    /**
+     * Input bit set while the player is pressing left.
+     */
+    public static final int INPUT_LEFT = 1;
+
+    /**
+     * Input bit set while the player is pressing right.
+     */
+    public static final int INPUT_RIGHT = 2;
+
+    /**
+     * Input bit set while the player is pressing fire.
+     */
+    public static final int INPUT_FIRE = 4;
+
+    /**
+     * Sprite used for the player's ship.
+     */
+    public static final String SHIP_SPRITE = "sprites/ship.gif";
+
+    /**
+     * Sprite used for the aliens.
+     */
+    public static final String ALIEN_SPRITE = "sprites/alien.gif";
+
+    /**
+     * Sprite used for the player's shots.
+     */
+    public static final String SHOT_SPRITE = "sprites/shot.gif";
+
+    /**
+     * Every sprite used by the game, so that they can all be loaded up
+     * front rather than when the first entity using each one appears.
+     */
+    public static final String[] SPRITES = {SHIP_SPRITE, ALIEN_SPRITE, SHOT_SPRITE};
+
+    /**
+     * Position of the top left alien of the first wave at the start of a
+     * game.
+     */
+    private static final int WAVE_LEFT = 100, WAVE_TOP = 50;
+
+    /**
+     * Flight recorder type of the tick event, checked before creating
+     * one so that ticks allocate nothing while it isn't being recorded.
+     */
+    private static final EventType TICK_EVENT = EventType.getEventType(TickEvent.class);
+
+    /**
+     * The state of all the entities that exist in our game
+     */
+    private final EntityStore store = new EntityStore(128);
+
+    /**
+     * Pool of shots, reused as they leave play
+     */
+    private final ShotPool shotPool;
+
+    /**
+     * Number of rows of aliens, and of aliens in each row.
+     */
+    private final int alienRows, alienColumns;
+
+    /**
+     * The blocks of aliens (by default a single block of 5 rows, by 12
+     * aliens, spaced evenly)
+     */
+    private final AlienFormation[] formations;
+
+    /**
+     * The entity representing the player, created once and respawned for
+     * each game
+     */
+    private ShipEntity ship;
+
+    /**
+     * Every alien, by formation and then by cell of the formation
+     * (row-major), created once and respawned for each game
+     */
+    private final AlienEntity[] aliens;
+
+    /**
+     * Aliens found in the snapshot being checked by readSnapshot()
+     */
+    private final boolean[] snapshotAliens;
+
+    /**
+     * The speed at which the player's ship should move (pixels/sec)
+     */
+    private final double moveSpeed = 300;
+
+    /**
+     * The game time (ms) at which last fired a shot
+     */
+    private double lastFire;
+
+    /**
+     * The interval between our players shot (ms)
+     */
+    private final double firingInterval;
+
+    /**
+     * The number of aliens left on the screen
+     */
+    private int alienCount;
+
+    /**
+     * Set to true if an alien reaches the bottom of the screen or
+     * collides with the player's ship.
+     */
+    private boolean humansDead = false;
+
+    /**
+     * True if game logic needs to be applied this loop, normally as a result of
+     * a game event
+     */
+    private boolean logicRequiredThisLoop = false;
+
+    /**
+     * Number of steps taken since the start of the game.
+     */
+    private int iterations;
+
+    /**
+     * Length of one scoring period (ms).  The score is defined as the
+     * number of these periods required to kill all of the aliens, which
+     * keeps it independent of how often the game is stepped.
+     */
+    private static final double SCORE_PERIOD = 100;
+
+    /**
+     * Game time elapsed since the start of the game (ms).  Used in
+     * place of the wall clock so that a game only depends on the
+     * sequence of steps it is given.
+     */
+    private double time;
+
+    /**
+     * Size of the playfield in pixels.
+     */
+    private final int width, height;
+
+    /**
+     * Broad phase used to find entities which may be colliding.
+     */
+    private final CollisionGrid collisionGrid;
+
+    /**
+     * If true, skip the grid and test every pair of entities whose
+     * collision layers allow them to interact.  The two approaches produce
+     * identical results, so this is mainly useful for comparing them.
+     */
+    private boolean bruteForceCollisions = Boolean.getBoolean("spaceinvaders.bruteForceCollisions");
+
+    /**
+     * Statistics each step is timed into, or null if steps aren't timed.
+     */
+    private TickStats tickStats;
+
+    /**
+     * Create a new world for the standard game, set up ready for a fresh
+     * game.
+     */
+    public GameWorld() {
+        this(new GameConfig());
+    }
+
+    /**
+     * Create a new world, set up ready for a fresh game.
+     *
+     * @param config settings of the game
+     */
+    public GameWorld(GameConfig config) {
+        width = config.getWidth();
+        height = config.getHeight();
+        collisionGrid = new CollisionGrid(width, height, 64);
+
+        alienRows = config.getAlienRows();
+        alienColumns = config.getAlienColumns();
+        checkWavesFit(config);
+        formations = new AlienFormation[config.getFormations()];
+        for (int f = 0; f < formations.length; f++) {
+            formations[f] = new AlienFormation(this, f, alienRows, alienColumns,
+                    config.getAlienSpacingX(), config.getAlienSpacingY());
+        }
+        aliens = new AlienEntity[formations.length * alienRows * alienColumns];
+        snapshotAliens = new boolean[aliens.length];
+
+        firingInterval = config.getFiringInterval();
+        shotPool = new ShotPool(this, SHOT_SPRITE, config.getShotPoolCapacity());
+
+        reset();
+    }
+
+    /**
+     * Check that the waves of aliens fit the playfield at the start of a
+     * game: each wave must fit between the points at which formations
+     * turn around at the sides, and the last must end above the ship.
+     * Waves which don't fit end every game within a tick or two.
+     *
+     * @param config settings of the game
+     * @throws IllegalArgumentException if the waves don't fit
+     */
+    private void checkWavesFit(GameConfig config) {
+        SpriteShape alien = SpriteShapes.get().getShape(ALIEN_SPRITE);
+
+        // formations turn at 10 pixels from the left and 50 from the right
+        double waveWidth = (alienColumns - 1) * config.getAlienSpacingX() + alien.getWidth();
+        if (waveWidth > width - 60) {
+            throw new IllegalArgumentException("Waves of " + alienColumns + " columns are too wide for a playfield "
+                    + width + " pixels wide");
+        }
+
+        int rows = (config.getFormations() - 1) * (alienRows + 1) + alienRows;
+        double bottom = WAVE_TOP + (rows - 1) * config.getAlienSpacingY() + alien.getHeight();
+        if (bottom > height - 50) {
+            throw new IllegalArgumentException("Formations of " + alienRows + " rows, " + config.getFormations()
+                    + " deep, are too tall for a playfield " + height + " pixels high");
+        }
+    }
+
+    /**
+     * Set up a fresh game.
+     */
+    public final void reset() {
+        initEntities();
+
+        humansDead = false;
+        logicRequiredThisLoop = false;
+        iterations = 0;
+        time = 0;
+        lastFire = -firingInterval;
+    }
+
+    /**
+     * Initialise the starting state of the entities (ship and aliens). Each
+     * entity adds itself to the entity store of the game as it is created.
+     */
+    private void initEntities() {
+        // clear out any existing entities and intialise a new set
+        store.clear();
+
+        // create the player ship and place it roughly in the center of the screen
+        if (ship == null) {
+            ship = new ShipEntity(this, SHIP_SPRITE, width / 2 - 30, height - 50);
+        } else {
+            ship.respawn(width / 2 - 30, height - 50);
+        }
+
+        // create the blocks of aliens (by default a single block of 5 rows,
+        // by 12 aliens, spaced evenly), one above the other and moving in
+        // alternate directions
+        alienCount = 0;
+        for (AlienFormation formation : formations) {
+            int f = formation.getIndex();
+            double top = WAVE_TOP + f * (alienRows + 1) * formation.getSpacingY();
+            formation.reset(WAVE_LEFT, top, f % 2 == 0 ? -75 : 75);
+
+            for (int row = 0; row < alienRows; row++) {
+                for (int x = 0; x < alienColumns; x++) {
+                    int cell = (f * alienRows + row) * alienColumns + x;
+                    int alienX = (int) (WAVE_LEFT + x * formation.getSpacingX());
+                    int alienY = (int) (top + row * formation.getSpacingY());
+                    if (aliens[cell] == null) {
+                        aliens[cell] = new AlienEntity(this, formation, ALIEN_SPRITE, row, x, alienX, alienY);
+                    } else {
+                        aliens[cell].respawn(alienX, alienY);
+                    }
+                    alienCount++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Notification from a game entity that the logic of the game should be run
+     * at the next opportunity (normally as a result of some game event)
+     */
+    public void updateLogic() {
+        logicRequiredThisLoop = true;
+    }
+
+    /**
+     * Remove an entity from the game. The entity removed will no longer move or
+     * be drawn.
+     *
+     * @param entity The entity that should be removed
+     */
+    public void removeEntity(Entity entity) {
+        if (entity.index >= 0) {
+            store.kill(entity.index);
+        }
+    }
+
+    /**
+     * Remove an entity from the game given its handle.  Does nothing if
+     * the handle refers to an entity which has already been removed.
+     *
+     * @param handle The handle of the entity that should be removed
+     */
+    public void removeEntity(long handle) {
+        int index = store.indexOf(handle);
+        if (index >= 0) {
+            store.kill(index);
+        }
+    }
+
+    /**
+     * Notification that an alien has been killed
+     *
+     * @param alien The alien killed
+     */
+    public void notifyAlienKilled(AlienEntity alien) {
+        // reduce the alient count, if there are none left, the player has won!
+        alienCount--;
+
+        if (alienCount == 0) {
+            return;
+        }
+
+        // speed up its formation by 2%
+        alien.getFormation().speedUp(1.02);
+    }
+
+    /**
+     * Notification that an alien has landed
+     */
+    public void notifyHumansDead() {
+        humansDead = true;
+    }
+
+    /**
+     * Attempt to fire a shot from the player. Its called "try" since we must
+     * first check that the player can fire at this point, i.e. has he/she
+     * waited long enough between shots
+     */
+    public void tryToFire() {
+        // check that we have waiting long enough to fire
+        if (!canFire()) {
+            return;
+        }
+
+        // if we waited long enough, create the shot entity, and record the time.
+        lastFire = time;
+        shotPool.acquire(ship.getX() + 10, ship.getY() - 30);
+    }
+
+    /**
+     * @return true if the player has waited long enough since the last
+     * shot to fire again
+     */
+    public boolean canFire() {
+        return time - lastFire >= firingInterval;
+    }
+
+    /**
+     * Returns true if game over condition is met.  In this case the condition
+     * is that all invading aliens are deceased.
+     *
+     * @return true if condition is met.
+     */
+    public boolean isGameOverConditionMet() {
+        return alienCount == 0 || humansDead;
+    }
+
+    public boolean isGameWon() {
+        return !humansDead;
+    }
+
+    /**
+     * Retrieve current game score (out of 1000) or score of last game.
+     * @return game score
+     */
+    public int getScore() {
+        int periods = (int) (time / SCORE_PERIOD);
+        return periods > 500 ? 0 : (500 - periods)*500;
+    }
+
+    /**
+     * @return the number of steps taken since the start of the game
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Identifies a snapshot written by writeSnapshot() ("SISS").
+     */
+    private static final int SNAPSHOT_MAGIC = 0x53495353;
+
+    /**
+     * Version of the snapshot format.
+     */
+    private static final int SNAPSHOT_VERSION = 2;
+
+    /**
+     * Size of the fixed part of a snapshot (bytes).
+     */
+    private static final int SNAPSHOT_HEADER_BYTES = 4 + 1 + 8 + 8 + 4 + 4 + 1 + 4 + 4;
+
+    /**
+     * Size of each formation's record in a snapshot (bytes).
+     */
+    private static final int SNAPSHOT_FORMATION_BYTES = 3 * 8 + 1;
+
+    /**
+     * Size of each entity's record in a snapshot (bytes).
+     */
+    private static final int SNAPSHOT_ENTITY_BYTES = 1 + 4 + 6 * 8;
+
+    /**
+     * @return the number of bytes writeSnapshot() will write
+     */
+    public int getSnapshotSize() {
+        return SNAPSHOT_HEADER_BYTES + formations.length * SNAPSHOT_FORMATION_BYTES
+                + store.size * SNAPSHOT_ENTITY_BYTES;
+    }
+
+    /**
+     * Write the complete state of the game to a buffer, starting at its
+     * current position.  Nothing is allocated, so this is cheap enough to
+     * do every tick.  The layout is:
+     * <pre>
+     * int     magic number
+     * byte    format version
+     * double  game time, time of last shot
+     * int     iterations, aliens left
+     * byte    flags (1 = humans dead, 2 = logic required)
+     * int     number of formations
+     *         per formation: double x, y and speed, byte 1 if turning
+     * int     number of entities
+     *         per entity, in store order:
+     *         byte type, int detail (index of the alien among all
+     *         aliens for aliens, 1 if used for shots), double x, y,
+     *         previous x, previous y, horizontal speed, vertical speed
+     * </pre>
+     *
+     * @param buffer buffer with at least getSnapshotSize() bytes remaining
+     */
+    public void writeSnapshot(ByteBuffer buffer) {
+        buffer.putInt(SNAPSHOT_MAGIC);
+        buffer.put((byte) SNAPSHOT_VERSION);
+        buffer.putDouble(time);
+        buffer.putDouble(lastFire);
+        buffer.putInt(iterations);
+        buffer.putInt(alienCount);
+        buffer.put((byte) ((humansDead ? 1 : 0) | (logicRequiredThisLoop ? 2 : 0)));
+
+        buffer.putInt(formations.length);
+        for (AlienFormation formation : formations) {
+            buffer.putDouble(formation.getX());
+            buffer.putDouble(formation.getY());
+            buffer.putDouble(formation.getHorizontalMovement());
+            buffer.put((byte) (formation.isTurning() ? 1 : 0));
+        }
+
+        buffer.putInt(store.size);
+        for (int i = 0; i < store.size; i++) {
+            int detail = 0;
+            Entity entity = store.entities[i];
+            if (entity instanceof AlienEntity) {
+                AlienEntity alien = (AlienEntity) entity;
+                detail = (alien.getFormation().getIndex() * alienRows + alien.getRow()) * alienColumns
+                        + alien.getColumn();
+            } else if (entity instanceof ShotEntity) {
+                detail = ((ShotEntity) entity).isUsed() ? 1 : 0;
+            }
+
+            buffer.put((byte) store.type[i]);
+            buffer.putInt(detail);
+            buffer.putDouble(store.x[i]);
+            buffer.putDouble(store.y[i]);
+            buffer.putDouble(store.prevX[i]);
+            buffer.putDouble(store.prevY[i]);
+            buffer.putDouble(store.dx[i]);
+            buffer.putDouble(store.dy[i]);
+        }
+    }
+
+    /**
+     * Replace the state of the game with one written by writeSnapshot(),
+     * read from the buffer's current position.  Entities are respawned
+     * from the ship, the aliens and the shot pool, in their original
+     * order, so the game carries on exactly as it would have done from
+     * the point the snapshot was taken.
+     *
+     * @param buffer buffer holding the snapshot
+     * @throws IllegalArgumentException if the buffer doesn't hold a
+     * complete snapshot of a game with the same formations of aliens, in
+     * which case the game is left untouched
+     */
+    public void readSnapshot(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.remaining() < SNAPSHOT_HEADER_BYTES
+                || buffer.getInt(start) != SNAPSHOT_MAGIC
+                || buffer.get(start + 4) != SNAPSHOT_VERSION) {
+            throw new IllegalArgumentException("Not a game snapshot");
+        }
+        int formationCount = buffer.getInt(start + SNAPSHOT_HEADER_BYTES - 8);
+        if (formationCount != formations.length) {
+            throw new IllegalArgumentException("Snapshot is of a different number of formations");
+        }
+        int entities = start + SNAPSHOT_HEADER_BYTES + formationCount * SNAPSHOT_FORMATION_BYTES;
+        if (buffer.limit() < entities) {
+            throw new IllegalArgumentException("Truncated game snapshot");
+        }
+        int count = buffer.getInt(entities - 4);
+        if (count < 0 || buffer.limit() - entities < (long) count * SNAPSHOT_ENTITY_BYTES) {
+            throw new IllegalArgumentException("Truncated game snapshot");
+        }
+
+        // check every record before changing anything, so that a bad
+        // snapshot can't leave the game half restored
+        boolean shipFound = false;
+        Arrays.fill(snapshotAliens, false);
+        for (int n = 0; n < count; n++) {
+            int record = entities + n * SNAPSHOT_ENTITY_BYTES;
+            int entityType = buffer.get(record);
+            int detail = buffer.getInt(record + 1);
+
+            switch (entityType) {
+                case Entity.TYPE_SHIP:
+                    if (shipFound) {
+                        throw new IllegalArgumentException("Snapshot holds more than one ship");
+                    }
+                    shipFound = true;
+                    break;
+                case Entity.TYPE_ALIEN:
+                    if (detail < 0 || detail >= aliens.length) {
+                        throw new IllegalArgumentException("Snapshot is of a different wave of aliens");
+                    }
+                    if (snapshotAliens[detail]) {
+                        throw new IllegalArgumentException("Snapshot holds alien " + detail + " more than once");
+                    }
+                    snapshotAliens[detail] = true;
+                    break;
+                case Entity.TYPE_SHOT:
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown entity type " + entityType);
+            }
+        }
+
+        buffer.position(start + 5);
+        store.clear();
+
+        time = buffer.getDouble();
+        lastFire = buffer.getDouble();
+        iterations = buffer.getInt();
+        alienCount = buffer.getInt();
+        int flags = buffer.get();
+        humansDead = (flags & 1) != 0;
+        logicRequiredThisLoop = (flags & 2) != 0;
+
+        buffer.getInt();
+        for (AlienFormation formation : formations) {
+            double formationX = buffer.getDouble();
+            double formationY = buffer.getDouble();
+            double formationSpeed = buffer.getDouble();
+            formation.reset(formationX, formationY, formationSpeed, buffer.get() != 0);
+        }
+
+        buffer.getInt();
+        for (int n = 0; n < count; n++) {
+            int entityType = buffer.get();
+            int detail = buffer.getInt();
+            double x = buffer.getDouble(), y = buffer.getDouble();
+
+            switch (entityType) {
+                case Entity.TYPE_SHIP:
+                    ship.respawn((int) x, (int) y);
+                    break;
+                case Entity.TYPE_ALIEN:
+                    aliens[detail].respawn((int) x, (int) y);
+                    break;
+                default:
+                    shotPool.acquire((int) x, (int) y).setUsed(detail != 0);
+                    break;
+            }
+
+            // respawning places entities at whole pixels, so put back the
+            // exact state
+            int i = store.size - 1;
+            store.x[i] = x;
+            store.y[i] = y;
+            store.prevX[i] = buffer.getDouble();
+            store.prevY[i] = buffer.getDouble();
+            store.dx[i] = buffer.getDouble();
+            store.dy[i] = buffer.getDouble();
+        }
+    }
+
+    /**
+     * Calculate a checksum of the state of the game: the clock, the alien
+     * formations and the type, position and speed of every entity in
+     * order.  Two worlds given the same sequence of steps always end up
+     * with the same checksum, so this is a cheap way of checking that a
+     * game has been reproduced exactly.
+     *
+     * @return the checksum
+     */
+    public long getChecksum() {
+        long hash = 17;
+        hash = 31 * hash + Double.doubleToLongBits(time);
+        hash = 31 * hash + Double.doubleToLongBits(lastFire);
+        hash = 31 * hash + iterations;
+        hash = 31 * hash + alienCount;
+        hash = 31 * hash + (humansDead ? 1 : 0);
+        for (AlienFormation formation : formations) {
+            hash = 31 * hash + Double.doubleToLongBits(formation.getX());
+            hash = 31 * hash + Double.doubleToLongBits(formation.getY());
+            hash = 31 * hash + Double.doubleToLongBits(formation.getHorizontalMovement());
+        }
+
+        for (int i = 0; i < store.size; i++) {
+            hash = 31 * hash + store.type[i];
+            hash = 31 * hash + Double.doubleToLongBits(store.x[i]);
+            hash = 31 * hash + Double.doubleToLongBits(store.y[i]);
+            hash = 31 * hash + Double.doubleToLongBits(store.dx[i]);
+            hash = 31 * hash + Double.doubleToLongBits(store.dy[i]);
+        }
+
+        return hash;
+    }
+
+    /**
+     * @return the store holding the entities currently in the game
+     */
+    public EntityStore getEntityStore() {
+        return store;
+    }
+
+    /**
+     * @return the player's ship
+     */
+    public ShipEntity getShip() {
+        return ship;
+    }
+
+    /**
+     * @return the first formation of aliens, the only one in the
+     * standard game
+     */
+    public AlienFormation getFormation() {
+        return formations[0];
+    }
+
+    /**
+     * @return every formation of aliens
+     */
+    public AlienFormation[] getFormations() {
+        return formations.clone();
+    }
+
+    /**
+     * @return the pool supplying the player's shots
+     */
+    public ShotPool getShotPool() {
+        return shotPool;
+    }
+
+    /**
+     * @return the number of aliens left
+     */
+    public int getAlienCount() {
+        return alienCount;
+    }
+
+    /**
+     * @return the width of the playfield in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height of the playfield in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Time the phases of each step, and count what happens in them.
+     *
+     * @param tickStats statistics to record into, or null to stop timing
+     */
+    public void setTickStats(TickStats tickStats) {
+        this.tickStats = tickStats;
+    }
+
+    /**
+     * Choose whether collisions are found by brute force or by using the
+     * collision grid.
+     *
+     * @param bruteForceCollisions true to test every interacting pair of entities
+     */
+    public void setBruteForceCollisions(boolean bruteForceCollisions) {
+        this.bruteForceCollisions = bruteForceCollisions;
+    }
+
+    /**
+     * Advance the game state.  This method is responsible for:
+     * <p>
+     * - Applying the player's input to the ship
+     * - Moving the game entities
+     * - Resolving collisions
+     * - Updating game events
+     * <p>
+     * Steps taken once the game over condition is met have no effect.
+     *
+     * @param delta Number of milliseconds to increment state by.
+     * @param input Bitwise OR of the INPUT_ constants currently active.
+     */
+    public void step(double delta, int input) {
+        if (isGameOverConditionMet()) {
+            return;
+        }
+
+        // phases are only timed if someone is listening
+        TickStats stats = tickStats;
+        TickEvent event = TICK_EVENT.isEnabled() ? new TickEvent() : null;
+        boolean timed = stats != null || event != null;
+        if (event != null) {
+            event.begin();
+        }
+        long start = timed ? System.nanoTime() : 0;
+
+        // Increment score and game clock:
+        iterations += 1;
+        time += delta;
+
+        // resolve the movement of the ship. First assume the ship
+        // isn't moving. If either cursor key is pressed then
+        // update the movement appropraitely
+        boolean left = (input & INPUT_LEFT) != 0;
+        boolean right = (input & INPUT_RIGHT) != 0;
+
+        ship.setHorizontalMovement(0);
+
+        if (left && !right) {
+            ship.setHorizontalMovement(-moveSpeed);
+        } else if (right && !left) {
+            ship.setHorizontalMovement(moveSpeed);
+        }
+
+        // if we're pressing fire, attempt to fire
+        if ((input & INPUT_FIRE) != 0) {
+            tryToFire();
+        }
+
+        // move every entity
+        moveEntities(delta);
+        long moved = timed ? System.nanoTime() : 0;
+
+        // resolve collisions between entities
+        int tests = collideEntities();
+        long collided = timed ? System.nanoTime() : 0;
+
+        // remove any entity that has been marked for clear up
+        int before = store.size;
+        store.compact();
+        long removed = timed ? System.nanoTime() : 0;
+
+        // if a game event has indicated that game logic should
+        // be resolved, let the aliens which reached an edge turn around
+        if (logicRequiredThisLoop) {
+            for (AlienFormation formation : formations) {
+                formation.doLogic();
+            }
+
+            logicRequiredThisLoop = false;
+        }
+
+        if (!timed) {
+            return;
+        }
+
+        long end = System.nanoTime();
+        if (stats != null) {
+            stats.recordPhase(TickStats.MOVE, moved - start);
+            stats.recordPhase(TickStats.COLLIDE, collided - moved);
+            stats.recordPhase(TickStats.REMOVE, removed - collided);
+            stats.recordPhase(TickStats.LOGIC, end - removed);
+            stats.recordPhase(TickStats.TICK, end - start);
+            stats.recordTick(tests, before - store.size, store.size);
+        }
+
+        if (event == null) {
+            return;
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.tick = iterations;
+            event.move = moved - start;
+            event.collide = collided - moved;
+            event.remove = removed - collided;
+            event.logic = end - removed;
+            event.collisionTests = tests;
+            event.removals = before - store.size;
+            event.entities = store.size;
+            event.commit();
+        }
+    }
+
+    /**
+     * Move every entity according to its speed, applying the movement
+     * rules for each type of entity along the way:
+     * <p>
+     * - The ship won't move past the edges of the screen
+     * - Aliens are moved as a block by their formation, and reaching the
+     *   edge of the screen requests a logic update which turns that
+     *   formation around
+     * - Shots which leave the top of the screen are removed
+     * <p>
+     * Runs straight through the entity store without touching any
+     * entity objects.
+     *
+     * @param delta Number of milliseconds to move entities by.
+     */
+    void moveEntities(double delta) {
+        store.rememberPositions();
+
+        int[] type = store.type;
+        double[] x = store.x, y = store.y, dx = store.dx, dy = store.dy;
+
+        for (int i = 0; i < store.size; i++) {
+            switch (type[i]) {
+                case Entity.TYPE_SHIP:
+                    // if we're moving towards an edge and have reached
+                    // it, don't move
+                    if ((dx[i] < 0 && x[i] < 10) || (dx[i] > 0 && x[i] > width - 50)) {
+                        continue;
+                    }
+                    break;
+
+                case Entity.TYPE_ALIEN:
+                    // placed by the formation below
+                    continue;
+            }
+
+            x[i] += (delta * dx[i]) / 1000;
+            y[i] += (delta * dy[i]) / 1000;
+
+            // if a shot has left the screen, remove it
+            if (type[i] == Entity.TYPE_SHOT && y[i] < -100) {
+                store.kill(i);
+            }
+        }
+
+        for (AlienFormation formation : formations) {
+            formation.move(delta);
+            formation.place(store);
+        }
+    }
+
+    /**
+     * Find every pair of entities which collide and notify both entities
+     * that the collision has occured.  Candidate pairs involving aliens
+     * come straight from the alien formations, using the position of the
+     * entity relative to the formation's grid, and any others come from
+     * the collision grid.  Only entities whose collision layers and masks
+     * say they can interact are ever paired up, and pairs are visited in
+     * entity order so the outcome does not depend on the broad phase used.
+     * Entities which have been killed earlier in the tick still take part,
+     * it is up to them whether to react to a collision with a dead entity.
+     *
+     * @return the number of candidate pairs tested
+     */
+    private int collideEntities() {
+        int[] type = store.type, width = store.width, height = store.height;
+        int[] layer = store.layer, mask = store.mask;
+        double[] x = store.x, y = store.y;
+
+        collisionGrid.clear();
+        for (int i = 0; i < store.size; i++) {
+            int left = (int) x[i], top = (int) y[i];
+
+            // the brute force reference includes the aliens in the search,
+            // otherwise they are left to the formations
+            if (bruteForceCollisions || type[i] != Entity.TYPE_ALIEN) {
+                collisionGrid.add(i, left, top, width[i], height[i], layer[i], mask[i]);
+            }
+
+            if (!bruteForceCollisions && (mask[i] & Entity.LAYER_ALIEN) != 0) {
+                for (AlienFormation formation : formations) {
+                    formation.findCandidates(i, left, top, width[i], height[i], collisionGrid);
+                }
+            }
+        }
+
+        int pairCount = bruteForceCollisions
+                ? collisionGrid.findPairsBruteForce()
+                : collisionGrid.findPairs();
+
+        for (int n = 0; n < pairCount; n++) {
+            long pair = collisionGrid.getPair(n);
+            int p = (int) (pair >>> 32), q = (int) pair;
+
+            if (store.overlaps(p, q)) {
+                Entity me = store.entities[p];
+                Entity him = store.entities[q];
+                me.collidedWith(him);
+                him.collidedWith(me);
+            }
+        }
+
+        return pairCount;
+    }
+}
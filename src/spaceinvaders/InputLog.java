@@ -0,0 +1,341 @@
+package spaceinvaders;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A record of the player's input throughout a game, together with the
+ * outcome of the game.  Since a GameWorld depends only on the sequence of
+ * steps it is given, replaying the input with the same tick length
+ * reproduces the game exactly, which the outcome allows to be checked
+ * (see Replay).
+ *
+ * Only changes of input are stored, each as the number of ticks since
+ * the previous change followed by the new input bits.  In the binary form
+ * the tick counts are written as variable length integers, so a typical
+ * change takes two or three bytes:
+ * <pre>
+ * int     magic number
+ * byte    format version
+ * double  tick length (ms)
+ * varint  number of changes
+ *         per change: varint ticks since previous change, byte input
+ * varint  number of ticks in the game
+ * int     final score
+ * int     aliens left
+ * boolean won
+ * long    final world checksum (see GameWorld.getChecksum())
+ * </pre>
+ *
+ * @author Tim Vaughan
+ */
+public class InputLog {
+
+    /**
+     * Identifies an input log ("SIIL").
+     */
+    private static final int MAGIC = 0x5349494C;
+
+    /**
+     * Version of the binary format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Length of each tick (ms).
+     */
+    private final double tickLength;
+
+    /**
+     * Tick at which each change of input occurred.
+     */
+    private int[] ticks = new int[64];
+
+    /**
+     * Input bits from each change on.
+     */
+    private byte[] inputs = new byte[64];
+
+    /**
+     * Number of changes.
+     */
+    private int count;
+
+    /**
+     * Input in effect after the last change.
+     */
+    private int lastInput;
+
+    /**
+     * Number of ticks, final score and aliens left at the end of the
+     * game, valid once finished is true.
+     */
+    private int tickCount, score, alienCount;
+
+    /**
+     * True if the game was won, valid once finished is true.
+     */
+    private boolean won;
+
+    /**
+     * Checksum of the world at the end of the game, valid once finished
+     * is true.
+     */
+    private long checksum;
+
+    /**
+     * True once the outcome has been recorded.
+     */
+    private boolean finished;
+
+    /**
+     * Create an empty log.
+     *
+     * @param tickLength length of each tick (ms)
+     */
+    public InputLog(double tickLength) {
+        this.tickLength = tickLength;
+    }
+
+    /**
+     * Record the input applied at a tick.  Nothing is stored unless it
+     * differs from the input at the previous tick.
+     *
+     * @param tick number of the tick, i.e. GameWorld.getIterations()
+     * before the step
+     * @param input Bitwise OR of the GameWorld.INPUT_ constants
+     */
+    public void record(int tick, int input) {
+        if (input == lastInput) {
+            return;
+        }
+
+        if (count == ticks.length) {
+            ticks = Arrays.copyOf(ticks, 2 * count);
+            inputs = Arrays.copyOf(inputs, 2 * count);
+        }
+        ticks[count] = tick;
+        inputs[count] = (byte) input;
+        count++;
+        lastInput = input;
+    }
+
+    /**
+     * Record the outcome of the game.
+     *
+     * @param world the world once the game is over
+     */
+    public void finish(GameWorld world) {
+        tickCount = world.getIterations();
+        score = world.getScore();
+        alienCount = world.getAlienCount();
+        won = world.isGameWon();
+        checksum = world.getChecksum();
+        finished = true;
+    }
+
+    /**
+     * Check whether a world has reached the recorded outcome.
+     *
+     * @param world the world
+     * @return true if the recorded outcome and checksum match
+     */
+    public boolean matches(GameWorld world) {
+        return finished
+                && world.getIterations() == tickCount
+                && world.getScore() == score
+                && world.getAlienCount() == alienCount
+                && world.isGameWon() == won
+                && world.getChecksum() == checksum;
+    }
+
+    /**
+     * Find the input in effect at a tick.
+     *
+     * @param tick number of the tick
+     * @param from index of a change at or before tick, as a starting point
+     * @return index of the last change at or before tick, or -1 if none
+     */
+    public int findChange(int tick, int from) {
+        int n = Math.max(from, -1);
+        while (n + 1 < count && ticks[n + 1] <= tick) {
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * @return length of each tick (ms)
+     */
+    public double getTickLength() {
+        return tickLength;
+    }
+
+    /**
+     * @return number of changes of input
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param n index of change
+     * @return tick at which the change occurred
+     */
+    public int getTick(int n) {
+        return ticks[n];
+    }
+
+    /**
+     * @param n index of change
+     * @return input bits from the change on
+     */
+    public int getInput(int n) {
+        return inputs[n];
+    }
+
+    /**
+     * @return true if the outcome of the game has been recorded
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return number of ticks in the recorded game
+     */
+    public int getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * @return final score of the recorded game
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * @return number of aliens left at the end of the recorded game
+     */
+    public int getAlienCount() {
+        return alienCount;
+    }
+
+    /**
+     * @return true if the recorded game was won
+     */
+    public boolean isWon() {
+        return won;
+    }
+
+    /**
+     * @return checksum of the world at the end of the recorded game
+     */
+    public long getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Write the log in binary form.
+     *
+     * @param stream stream to write to
+     * @throws IOException if writing fails
+     */
+    public void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeDouble(tickLength);
+
+        writeVarint(out, count);
+        int previous = 0;
+        for (int n = 0; n < count; n++) {
+            writeVarint(out, ticks[n] - previous);
+            out.writeByte(inputs[n]);
+            previous = ticks[n];
+        }
+
+        writeVarint(out, tickCount);
+        out.writeInt(score);
+        out.writeInt(alienCount);
+        out.writeBoolean(won);
+        out.writeLong(checksum);
+        out.flush();
+    }
+
+    /**
+     * Read a log written by write().
+     *
+     * @param stream stream to read from
+     * @return the log
+     * @throws IOException if reading fails or the stream doesn't hold a log
+     */
+    public static InputLog read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an input log");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported input log version " + version);
+        }
+
+        InputLog log = new InputLog(in.readDouble());
+
+        int changes = readVarint(in);
+        int tick = 0;
+        for (int n = 0; n < changes; n++) {
+            tick += readVarint(in);
+            log.record(tick, in.readByte());
+        }
+
+        log.tickCount = readVarint(in);
+        log.score = in.readInt();
+        log.alienCount = in.readInt();
+        log.won = in.readBoolean();
+        log.checksum = in.readLong();
+        log.finished = true;
+
+        return log;
+    }
+
+    /**
+     * Write a non-negative integer 7 bits at a time, lowest first, with
+     * the top bit of each byte set if more follow.
+     *
+     * @param out stream to write to
+     * @param value value to write
+     * @throws IOException if writing fails
+     */
+    static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Read an integer written by writeVarint().
+     *
+     * @param in stream to read from
+     * @return the value
+     * @throws IOException if reading fails or the value is malformed
+     */
+    static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
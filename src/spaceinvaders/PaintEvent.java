@@ -0,0 +1,43 @@
+package spaceinvaders;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event covering the drawing of one frame by GamePanel.
+ *
+ * @author Tim Vaughan
+ */
+@Name("spaceinvaders.Paint")
+@Label("Paint Frame")
+@Category("Space Invaders")
+@Description("One frame drawn by the game panel")
+public class PaintEvent extends Event {
+
+    /**
+     * True if drawn by active rendering, false if by Swing.
+     */
+    @Label("Active")
+    boolean active;
+
+    /**
+     * Number of dirty regions redrawn.
+     */
+    @Label("Regions")
+    int regions;
+
+    /**
+     * Total area of the dirty regions redrawn (pixels).
+     */
+    @Label("Area")
+    long area;
+
+    /**
+     * Number of entities in the game.
+     */
+    @Label("Entities")
+    int entities;
+}
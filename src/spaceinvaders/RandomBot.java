@@ -0,0 +1,75 @@
+package spaceinvaders;
+
+import java.util.SplittableRandom;
+
+/**
+ * A player which moves at random, for playing large numbers of games
+ * offline.  The bot keeps moving left, moving right or standing still
+ * for a random number of ticks before choosing again, and fires on most
+ * ticks.  Everything it does is drawn from a random generator seeded up
+ * front, so a given seed always plays the same game.
+ *
+ * @author Tim Vaughan
+ */
+public class RandomBot {
+
+    /**
+     * Shortest and longest time the bot sticks with a movement (ticks).
+     */
+    private static final int MIN_HOLD = 10, MAX_HOLD = 120;
+
+    /**
+     * Chance of trying to fire on any tick.
+     */
+    private static final double FIRE_CHANCE = 0.9;
+
+    /**
+     * Source of the bot's decisions.
+     */
+    private SplittableRandom random;
+
+    /**
+     * Current movement, as GameWorld.INPUT_ constants.
+     */
+    private int movement;
+
+    /**
+     * Ticks left before the movement is chosen again.
+     */
+    private int hold;
+
+    /**
+     * Create a bot.
+     *
+     * @param seed seed of the bot's decisions
+     */
+    public RandomBot(long seed) {
+        reset(seed);
+    }
+
+    /**
+     * Start again with a new seed, e.g. for a new game.
+     *
+     * @param seed seed of the bot's decisions
+     */
+    public void reset(long seed) {
+        random = new SplittableRandom(seed);
+        movement = 0;
+        hold = 0;
+    }
+
+    /**
+     * Decide what to do on the next tick.
+     *
+     * @return bitwise OR of the GameWorld.INPUT_ constants
+     */
+    public int nextInput() {
+        if (hold-- <= 0) {
+            int choice = random.nextInt(3);
+            movement = choice == 0 ? GameWorld.INPUT_LEFT : choice == 1 ? GameWorld.INPUT_RIGHT : 0;
+            hold = random.nextInt(MIN_HOLD, MAX_HOLD + 1);
+        }
+
+        return random.nextDouble() < FIRE_CHANCE ? movement | GameWorld.INPUT_FIRE : movement;
+    }
+}
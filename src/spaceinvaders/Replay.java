@@ -0,0 +1,77 @@
+package spaceinvaders;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Re-runs games recorded in input logs, headlessly and as fast as the CPU
+ * allows, and checks that each one reaches the recorded outcome.
+ *
+ * Usage: java spaceinvaders.Replay log...
+ *
+ * Exits with status 1 if any game fails to match.
+ *
+ * @author Tim Vaughan
+ */
+public class Replay {
+
+    /**
+     * Play back the input of a log in a world.  The world is reset first.
+     *
+     * @param log the log to replay
+     * @param world the world to replay it in
+     */
+    public static void run(InputLog log, GameWorld world) {
+        world.reset();
+
+        double delta = log.getTickLength();
+        int change = -1;
+        for (int tick = 0; tick < log.getTickCount() && !world.isGameOverConditionMet(); tick++) {
+            change = log.findChange(tick, change);
+            int input = change >= 0 ? log.getInput(change) : 0;
+            world.step(delta, input);
+        }
+    }
+
+    /**
+     * Replay the logs named on the command line.
+     *
+     * @param args names of input log files
+     * @throws IOException if a log can't be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java spaceinvaders.Replay log...");
+            System.exit(2);
+        }
+
+        GameWorld world = new GameWorld();
+        boolean allMatched = true;
+
+        for (String name : args) {
+            InputLog log;
+            try (InputStream in = new BufferedInputStream(new FileInputStream(name))) {
+                log = InputLog.read(in);
+            }
+
+            long start = System.nanoTime();
+            run(log, world);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            boolean matched = log.matches(world);
+            allMatched &= matched;
+
+            System.out.printf("%s: %s, %d ticks in %.3f s (%.0f ticks/s), score %d (recorded %d), %d aliens left (recorded %d)%n",
+                    name, matched ? "OK" : "MISMATCH",
+                    world.getIterations(), seconds, world.getIterations() / seconds,
+                    world.getScore(), log.getScore(),
+                    world.getAlienCount(), log.getAlienCount());
+        }
+
+        if (!allMatched) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package spaceinvaders;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads a replay file written by ReplayWriter, restoring a world to its
+ * state at any recorded tick.
+ *
+ * The file is memory mapped, so only the parts actually visited are read
+ * from disk.  Opening it reads just the keyframe index; seeking then
+ * finds the last keyframe at or before the tick by binary search and
+ * applies the deltas recorded since, so the cost of a seek is bounded by
+ * the keyframe interval however long the replay is.
+ *
+ * Usage: java spaceinvaders.ReplayReader file tick...
+ *
+ * @author Tim Vaughan
+ */
+public class ReplayReader implements Closeable {
+
+    /**
+     * The open file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The whole file, mapped into memory.
+     */
+    private final MappedByteBuffer file;
+
+    /**
+     * Length of each tick (ms).
+     */
+    private final double tickLength;
+
+    /**
+     * Tick of each keyframe, in ascending order.
+     */
+    private final int[] keyframeTicks;
+
+    /**
+     * Offset in the file of each keyframe's record.
+     */
+    private final long[] keyframeOffsets;
+
+    /**
+     * Offset of the end of the last record.
+     */
+    private final int recordsEnd;
+
+    /**
+     * Tick of the last record.
+     */
+    private int lastTick;
+
+    /**
+     * Snapshot being reconstructed, zero padded beyond its length.
+     */
+    private byte[] work = new byte[4096];
+
+    /**
+     * Length of the snapshot in work.
+     */
+    private int workLength;
+
+    /**
+     * Buffer wrapping work, used to restore the world.
+     */
+    private ByteBuffer snapshot = ByteBuffer.wrap(work);
+
+    /**
+     * Open a replay file.
+     *
+     * @param path the file
+     * @throws IOException if the file can't be read or isn't a replay
+     */
+    public ReplayReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Replay too large to map: " + path);
+            }
+            if (size < ReplayWriter.HEADER_BYTES + ReplayWriter.TRAILER_BYTES) {
+                throw new IOException("Not a replay file: " + path);
+            }
+            file = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            int end = (int) size;
+            if (file.getInt(0) != ReplayWriter.MAGIC
+                    || file.getInt(end - 4) != ReplayWriter.MAGIC) {
+                throw new IOException("Not a replay file (or not closed properly): " + path);
+            }
+            if (file.get(4) != ReplayWriter.VERSION) {
+                throw new IOException("Unsupported replay version " + file.get(4));
+            }
+            tickLength = file.getDouble(5);
+
+            long indexOffset = file.getLong(end - ReplayWriter.TRAILER_BYTES);
+            if (indexOffset < ReplayWriter.HEADER_BYTES || indexOffset > end - ReplayWriter.TRAILER_BYTES - 4) {
+                throw new IOException("Corrupt replay index: " + path);
+            }
+            recordsEnd = (int) indexOffset;
+
+            int count = file.getInt(recordsEnd);
+            if (count <= 0 || recordsEnd + 4 + 12L * count > end - ReplayWriter.TRAILER_BYTES) {
+                throw new IOException("Corrupt replay index: " + path);
+            }
+            keyframeTicks = new int[count];
+            keyframeOffsets = new long[count];
+            for (int k = 0; k < count; k++) {
+                keyframeTicks[k] = file.getInt(recordsEnd + 4 + 12 * k);
+                keyframeOffsets[k] = file.getLong(recordsEnd + 8 + 12 * k);
+            }
+
+            // the last tick is that of the last record after the final keyframe
+            file.position((int) keyframeOffsets[count - 1]);
+            while (file.position() < recordsEnd) {
+                file.get();
+                lastTick = readVarint();
+                int length = readVarint();
+                file.position(file.position() + length);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return length of each tick (ms)
+     */
+    public double getTickLength() {
+        return tickLength;
+    }
+
+    /**
+     * @return the first recorded tick
+     */
+    public int getFirstTick() {
+        return keyframeTicks[0];
+    }
+
+    /**
+     * @return the last recorded tick
+     */
+    public int getLastTick() {
+        return lastTick;
+    }
+
+    /**
+     * @return number of keyframes in the file
+     */
+    public int getKeyframeCount() {
+        return keyframeTicks.length;
+    }
+
+    /**
+     * Restore a world to its state at a tick.  If the tick wasn't
+     * recorded the last recorded state before it is used.
+     *
+     * @param tick the tick to seek to
+     * @param world the world to restore
+     * @return the tick actually restored
+     * @throws IllegalArgumentException if the tick is before the start of
+     * the replay
+     */
+    public int seek(int tick, GameWorld world) {
+        int k = Arrays.binarySearch(keyframeTicks, tick);
+        if (k < 0) {
+            k = -k - 2;
+        }
+        if (k < 0) {
+            throw new IllegalArgumentException("Tick " + tick + " is before the start of the replay");
+        }
+
+        file.position((int) keyframeOffsets[k]);
+        int restored = -1;
+        while (file.position() < recordsEnd) {
+            int start = file.position();
+            int kind = file.get();
+            int recordTick = readVarint();
+            if (restored >= 0 && recordTick > tick) {
+                file.position(start);
+                break;
+            }
+
+            int length = readVarint();
+            if (kind == ReplayWriter.KEYFRAME) {
+                if (restored >= 0) {
+                    // the next keyframe, which binary search would have
+                    // found if it were wanted
+                    break;
+                }
+                readKeyframe(length);
+            } else {
+                applyDelta(length);
+            }
+            restored = recordTick;
+        }
+
+        snapshot.clear();
+        snapshot.limit(workLength);
+        world.readSnapshot(snapshot);
+
+        return restored;
+    }
+
+    /**
+     * Copy a keyframe into the work buffer.
+     *
+     * @param length length of the snapshot
+     */
+    private void readKeyframe(int length) {
+        ensureWork(length);
+        Arrays.fill(work, length, Math.max(length, workLength), (byte) 0);
+        file.get(work, 0, length);
+        workLength = length;
+    }
+
+    /**
+     * Apply a delta to the snapshot in the work buffer.
+     *
+     * @param length length of the encoded delta
+     */
+    private void applyDelta(int length) {
+        int end = file.position() + length;
+
+        int newLength = readVarint();
+        ensureWork(newLength);
+
+        int i = 0;
+        while (file.position() < end) {
+            i += readVarint();
+            int changed = readVarint();
+            for (int k = 0; k < changed; k++) {
+                work[i++] ^= file.get();
+            }
+        }
+
+        workLength = newLength;
+    }
+
+    /**
+     * Make sure the work buffer can hold a snapshot.
+     *
+     * @param length length of the snapshot
+     */
+    private void ensureWork(int length) {
+        if (work.length < length) {
+            work = Arrays.copyOf(work, Math.max(length, 2 * work.length));
+            snapshot = ByteBuffer.wrap(work);
+        }
+    }
+
+    /**
+     * Read a varint from the current position of the file.
+     *
+     * @return the value
+     */
+    private int readVarint() {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = file.get() & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint in replay");
+    }
+
+    /**
+     * Close the file.
+     *
+     * @throws IOException if closing fails
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Seek to the ticks named on the command line and print the state of
+     * the game at each, along with how long the seek took.
+     *
+     * @param args name of replay file followed by tick numbers
+     * @throws IOException if the file can't be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java spaceinvaders.ReplayReader file tick...");
+            System.exit(2);
+        }
+
+        try (ReplayReader reader = new ReplayReader(Paths.get(args[0]))) {
+            System.out.println(args[0] + ": ticks " + reader.getFirstTick() + "-" + reader.getLastTick()
+                    + ", " + reader.getKeyframeCount() + " keyframes");
+
+            GameWorld world = new GameWorld();
+            for (int n = 1; n < args.length; n++) {
+                long start = System.nanoTime();
+                int tick = reader.seek(Integer.parseInt(args[n]), world);
+                double millis = (System.nanoTime() - start) / 1e6;
+
+                System.out.printf("tick %d: score %d, %d aliens left, checksum %016x (%.3f ms)%n",
+                        tick, world.getScore(), world.getAlienCount(), world.getChecksum(), millis);
+            }
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package spaceinvaders;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writes a replay file: the state of a game after every tick, stored as
+ * periodic keyframes holding a complete snapshot of the world with
+ * compressed differences in between, followed by an index of the
+ * keyframes.  ReplayReader can then jump to any tick by decoding at most
+ * one keyframe's worth of differences, rather than simulating the game
+ * from the start.
+ * <p>
+ * The layout of the file is:
+ * <pre>
+ * int     magic number ("SIRF")
+ * byte    format version
+ * double  tick length (ms)
+ * records, one per call to append():
+ *   byte    kind (0 = keyframe, 1 = delta)
+ *   varint  tick number
+ *   varint  payload length
+ *   keyframe payload: snapshot (see GameWorld.writeSnapshot())
+ *   delta payload: varint snapshot length, then runs of
+ *                  varint unchanged bytes, varint changed bytes,
+ *                  changed bytes XOR the previous snapshot
+ * int     number of keyframes
+ *         per keyframe: int tick, long offset of its record
+ * long    offset of the keyframe index
+ * int     magic number
+ * </pre>
+ * Snapshots are compared with the previous one as if padded with zeros
+ * to the same length.  From one tick to the next most bytes of a snapshot
+ * are unchanged, and the positions which do change differ only in their
+ * low bytes, so the XOR runs are short.
+ *
+ * @author Tim Vaughan
+ */
+public class ReplayWriter implements Closeable {
+
+    /**
+     * Identifies a replay file ("SIRF").
+     */
+    static final int MAGIC = 0x53495246;
+
+    /**
+     * Version of the file format.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Record kinds.
+     */
+    static final int KEYFRAME = 0, DELTA = 1;
+
+    /**
+     * Size of the header (bytes).
+     */
+    static final int HEADER_BYTES = 4 + 1 + 8;
+
+    /**
+     * Size of the trailer (bytes).
+     */
+    static final int TRAILER_BYTES = 8 + 4;
+
+    /**
+     * File being written.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Maximum number of ticks between keyframes.
+     */
+    private final int keyframeInterval;
+
+    /**
+     * Staging buffer for writes to the channel.
+     */
+    private final ByteBuffer out = ByteBuffer.allocateDirect(1 << 16);
+
+    /**
+     * Offset in the file of the next byte written.
+     */
+    private long offset;
+
+    /**
+     * The current and previous snapshots, zero padded beyond their
+     * lengths.
+     */
+    private byte[] current = new byte[4096], previous = new byte[4096];
+
+    /**
+     * Lengths of the current and previous snapshots.
+     */
+    private int currentLength, previousLength;
+
+    /**
+     * Buffer wrapping current, used to take snapshots.
+     */
+    private ByteBuffer snapshot = ByteBuffer.wrap(current);
+
+    /**
+     * Encoded payload of the record being written.
+     */
+    private byte[] payload = new byte[4096];
+
+    /**
+     * Number of bytes in payload.
+     */
+    private int payloadLength;
+
+    /**
+     * Tick of each keyframe.
+     */
+    private int[] keyframeTicks = new int[64];
+
+    /**
+     * Offset in the file of each keyframe's record.
+     */
+    private long[] keyframeOffsets = new long[64];
+
+    /**
+     * Number of keyframes written.
+     */
+    private int keyframeCount;
+
+    /**
+     * Tick of the last keyframe.
+     */
+    private int lastKeyframeTick;
+
+    /**
+     * Create a replay file, replacing any existing file.
+     *
+     * @param path where to write the file
+     * @param tickLength length of each tick (ms)
+     * @param keyframeInterval maximum number of ticks between keyframes
+     * @throws IOException if the file can't be created
+     */
+    public ReplayWriter(Path path, double tickLength, int keyframeInterval) throws IOException {
+        this.keyframeInterval = keyframeInterval;
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+
+        out.putInt(MAGIC);
+        out.put((byte) VERSION);
+        out.putDouble(tickLength);
+        offset = HEADER_BYTES;
+    }
+
+    /**
+     * Record the state of a world.  Should be called after every tick,
+     * and at the start of the game.
+     *
+     * @param world the world
+     * @throws IOException if writing fails
+     */
+    public void append(GameWorld world) throws IOException {
+        int tick = world.getIterations();
+
+        // swap buffers, keeping the previous snapshot
+        byte[] swap = previous;
+        int swapLength = previousLength;
+        previous = current;
+        previousLength = currentLength;
+        current = swap;
+
+        // both buffers must be able to hold either snapshot
+        int size = world.getSnapshotSize();
+        int capacity = Math.max(size, previousLength);
+        if (current.length < capacity) {
+            current = new byte[Math.max(capacity, 2 * current.length)];
+            swapLength = 0;
+        }
+        if (previous.length < current.length) {
+            previous = Arrays.copyOf(previous, current.length);
+        }
+
+        if (snapshot.array() != current) {
+            snapshot = ByteBuffer.wrap(current);
+        }
+        snapshot.clear();
+        world.writeSnapshot(snapshot);
+        currentLength = size;
+
+        // clear what's left of the older snapshot, keeping the padding zero
+        Arrays.fill(current, currentLength, Math.max(currentLength, swapLength), (byte) 0);
+
+        int kind;
+        if (keyframeCount == 0 || tick - lastKeyframeTick >= keyframeInterval) {
+            kind = KEYFRAME;
+            ensurePayload(currentLength);
+            System.arraycopy(current, 0, payload, 0, currentLength);
+            payloadLength = currentLength;
+
+            if (keyframeCount == keyframeTicks.length) {
+                keyframeTicks = Arrays.copyOf(keyframeTicks, 2 * keyframeCount);
+                keyframeOffsets = Arrays.copyOf(keyframeOffsets, 2 * keyframeCount);
+            }
+            keyframeTicks[keyframeCount] = tick;
+            keyframeOffsets[keyframeCount] = offset;
+            keyframeCount++;
+            lastKeyframeTick = tick;
+        } else {
+            kind = DELTA;
+            encodeDelta();
+        }
+
+        ensureSpace(1 + 5 + 5);
+        put((byte) kind);
+        putVarint(tick);
+        putVarint(payloadLength);
+        write(payload, payloadLength);
+    }
+
+    /**
+     * Encode the differences between the previous and current snapshots
+     * into the payload.
+     */
+    private void encodeDelta() {
+        payloadLength = 0;
+        int length = Math.max(currentLength, previousLength);
+
+        // worst case: every byte changed
+        ensurePayload(5 + 10 + length);
+        payloadVarint(currentLength);
+
+        int i = 0;
+        while (i < length) {
+            int unchanged = i;
+            while (i < length && current[i] == previous[i]) {
+                i++;
+            }
+            int changed = i;
+            while (i < length && current[i] != previous[i]) {
+                i++;
+            }
+            if (i == changed) {
+                break;
+            }
+
+            ensurePayload(payloadLength + 10 + i - changed);
+            payloadVarint(changed - unchanged);
+            payloadVarint(i - changed);
+            for (int k = changed; k < i; k++) {
+                payload[payloadLength++] = (byte) (current[k] ^ previous[k]);
+            }
+        }
+    }
+
+    /**
+     * Make sure the payload can hold a number of bytes.
+     *
+     * @param length number of bytes needed
+     */
+    private void ensurePayload(int length) {
+        if (payload.length < length) {
+            payload = Arrays.copyOf(payload, Math.max(length, 2 * payload.length));
+        }
+    }
+
+    /**
+     * Append a varint to the payload.
+     *
+     * @param value non-negative value
+     */
+    private void payloadVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            payload[payloadLength++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        payload[payloadLength++] = (byte) value;
+    }
+
+    /**
+     * Write the keyframe index and close the file.
+     *
+     * @throws IOException if writing fails
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            long indexOffset = offset;
+            ensureSpace(4);
+            out.putInt(keyframeCount);
+            offset += 4;
+            for (int k = 0; k < keyframeCount; k++) {
+                ensureSpace(12);
+                out.putInt(keyframeTicks[k]);
+                out.putLong(keyframeOffsets[k]);
+                offset += 12;
+            }
+            ensureSpace(TRAILER_BYTES);
+            out.putLong(indexOffset);
+            out.putInt(MAGIC);
+            offset += TRAILER_BYTES;
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Write one byte.
+     *
+     * @param b the byte
+     */
+    private void put(byte b) {
+        out.put(b);
+        offset++;
+    }
+
+    /**
+     * Write a varint, in the form read by ReplayReader.
+     *
+     * @param value non-negative value
+     */
+    private void putVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        put((byte) value);
+    }
+
+    /**
+     * Write an array of bytes.
+     *
+     * @param bytes the bytes
+     * @param length number of bytes to write
+     * @throws IOException if writing fails
+     */
+    private void write(byte[] bytes, int length) throws IOException {
+        int done = 0;
+        while (done < length) {
+            if (!out.hasRemaining()) {
+                flush();
+            }
+            int n = Math.min(out.remaining(), length - done);
+            out.put(bytes, done, n);
+            done += n;
+        }
+        offset += length;
+    }
+
+    /**
+     * Make sure the staging buffer has room for a number of bytes.
+     *
+     * @param bytes number of bytes needed (at most the buffer size)
+     * @throws IOException if writing fails
+     */
+    private void ensureSpace(int bytes) throws IOException {
+        if (out.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    /**
+     * Write the staging buffer to the file.
+     *
+     * @throws IOException if writing fails
+     */
+    private void flush() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+}
@@ -0,0 +1,174 @@
+package spaceinvaders;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * A label followed by a number, e.g. the score, which is rendered into an
+ * image that is only recomposed when the number changes.
+ *
+ * The label and the ten digits are rasterised once, up front, the digits
+ * into a single strip.  Recomposing the image then just copies the label
+ * and a rectangle of the strip for each digit, and drawing it is a single
+ * image copy.  Nothing is allocated after construction.
+ *
+ * @author Tim Vaughan
+ */
+public class ScoreLayer {
+
+    /**
+     * The rendered label.
+     */
+    private final TextLayer label;
+
+    /**
+     * Width of the label, i.e. where the first digit goes.
+     */
+    private final int labelWidth;
+
+    /**
+     * The digits 0-9, side by side.
+     */
+    private final BufferedImage digits;
+
+    /**
+     * Position and width of each digit within the strip.
+     */
+    private final int[] digitX = new int[10], digitWidth = new int[10];
+
+    /**
+     * Height of the strip and distance from its top to the baseline.
+     */
+    private final int height, ascent;
+
+    /**
+     * The label and number as last composed.
+     */
+    private final BufferedImage image;
+
+    /**
+     * Scratch space for the decimal digits of the number, least
+     * significant first.
+     */
+    private final int[] decimal = new int[10];
+
+    /**
+     * The number shown in image, valid if composed is true.
+     */
+    private int value;
+
+    /**
+     * True once image has been composed.
+     */
+    private boolean composed;
+
+    /**
+     * Render the label and digit strip.
+     *
+     * @param text the label, drawn in front of the number
+     * @param font font to render in
+     * @param color color to render in
+     */
+    public ScoreLayer(String text, Font font, Color color) {
+        FontMetrics metrics = TextLayer.getMetrics(font);
+        ascent = metrics.getAscent();
+        height = ascent + metrics.getDescent();
+
+        label = new TextLayer(text, font, color);
+        labelWidth = metrics.stringWidth(text);
+
+        int stripWidth = 0, widest = 0;
+        for (int d = 0; d < 10; d++) {
+            digitX[d] = stripWidth;
+            digitWidth[d] = metrics.charWidth((char) ('0' + d));
+            stripWidth += digitWidth[d];
+            widest = Math.max(widest, digitWidth[d]);
+        }
+
+        digits = TextLayer.createImage(stripWidth, height);
+        Graphics g = digits.getGraphics();
+        g.setFont(font);
+        g.setColor(color);
+        for (int d = 0; d < 10; d++) {
+            g.drawString(String.valueOf(d), digitX[d], ascent);
+        }
+        g.dispose();
+
+        // room for the label and any int
+        image = TextLayer.createImage(labelWidth + decimal.length * widest, height);
+    }
+
+    /**
+     * @return width of the area the label and any number may cover
+     */
+    public int getWidth() {
+        return image.getWidth();
+    }
+
+    /**
+     * @return height of the area the label and number cover
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return distance from the top of the covered area to the baseline
+     */
+    public int getAscent() {
+        return ascent;
+    }
+
+    /**
+     * Draw the label and number, positioned as Graphics.drawString() would
+     * position them.
+     *
+     * @param g graphics context to draw on
+     * @param x x location of the start of the label
+     * @param y y location of the baseline
+     * @param number the (non-negative) number to show
+     */
+    public void draw(Graphics g, int x, int y, int number) {
+        if (!composed || number != value) {
+            compose(number);
+        }
+        g.drawImage(image, x, y - ascent, null);
+    }
+
+    /**
+     * Redraw the cached image to show a new number.
+     *
+     * @param number the (non-negative) number to show
+     */
+    private void compose(int number) {
+        Graphics2D g = (Graphics2D) image.getGraphics();
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g.setComposite(AlphaComposite.SrcOver);
+
+        label.draw(g, 0, ascent);
+
+        int count = 0, remaining = Math.max(number, 0);
+        do {
+            decimal[count++] = remaining % 10;
+            remaining /= 10;
+        } while (remaining > 0);
+
+        int x = labelWidth;
+        for (int k = count - 1; k >= 0; k--) {
+            int d = decimal[k];
+            g.drawImage(digits, x, 0, x + digitWidth[d], height,
+                    digitX[d], 0, digitX[d] + digitWidth[d], height, null);
+            x += digitWidth[d];
+        }
+        g.dispose();
+
+        value = number;
+        composed = true;
+    }
+}
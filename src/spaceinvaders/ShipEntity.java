@@ -1,13 +1,14 @@
 package spaceinvaders;
 
 /**
- * The entity that represents the players ship
+ * The entity that represents the players ship. The ship stops at the
+ * edges of the screen (see GameWorld.moveEntities()).
  * 
  * @author Kevin Glass
  */
 public class ShipEntity extends Entity {
 	/** The game in which the ship exists */
-	private final GamePanel game;
+	private final GameWorld game;
 	
 	/**
 	 * Create a new entity to represent the players ship
@@ -17,32 +18,24 @@ public class ShipEntity extends Entity {
 	 * @param x The initial x location of the player's ship
 	 * @param y The initial y location of the player's ship
 	 */
-	public ShipEntity(GamePanel game,String ref,int x,int y) {
-		super(ref,x,y);
+	public ShipEntity(GameWorld game,String ref,int x,int y) {
+		super(game.getEntityStore(),TYPE_SHIP,ref,x,y);
 		
 		this.game = game;
+		
+		setCollision(LAYER_SHIP,LAYER_ALIEN);
 	}
 	
 	/**
-	 * Request that the ship move itself based on an elapsed ammount of
-	 * time
+	 * Bring the ship back into the game once it has been removed
 	 * 
-	 * @param delta The time that has elapsed since last move (ms)
+	 * @param x The new x location of the player's ship
+	 * @param y The new y location of the player's ship
 	 */
-    @Override
-	public void move(long delta) {
-		// if we're moving left and have reached the left hand side
-		// of the screen, don't move
-		if ((dx < 0) && (x < 10)) {
-			return;
-		}
-		// if we're moving right and have reached the right hand side
-		// of the screen, don't move
-		if ((dx > 0) && (x > 750)) {
-			return;
-		}
+	void respawn(int x,int y) {
+		spawn(x,y);
 		
-		super.move(delta);
+		setCollision(LAYER_SHIP,LAYER_ALIEN);
 	}
 	
 	/**
@@ -1,7 +1,9 @@
 package spaceinvaders;
 
 /**
- * An entity representing a shot fired by the player's ship
+ * An entity representing a shot fired by the player's ship. Shots
+ * which leave the top of the screen are removed by the game (see
+ * GameWorld.moveEntities()).
  * 
  * @author Kevin Glass
  */
@@ -9,7 +11,9 @@ public class ShotEntity extends Entity {
 	/** The vertical speed at which the players shot moves */
 	private final double moveSpeed = -300;
 	/** The game in which this entity exists */
-	private final GamePanel game;
+	private final GameWorld game;
+	/** The pool this shot returns to once removed, or null */
+	private final ShotPool pool;
 	/** True if this shot has been "used", i.e. its hit something */
 	private boolean used = false;
 	
@@ -17,34 +21,73 @@ public class ShotEntity extends Entity {
 	 * Create a new shot from the player
 	 * 
 	 * @param game The game in which the shot has been created
+	 * @param pool The pool to return the shot to once removed, or null
 	 * @param sprite The sprite representing this shot
 	 * @param x The initial x location of the shot
 	 * @param y The initial y location of the shot
 	 */
-	public ShotEntity(GamePanel game,String sprite,int x,int y) {
-		super(sprite,x,y);
+	public ShotEntity(GameWorld game,ShotPool pool,String sprite,int x,int y) {
+		super(game.getEntityStore(),TYPE_SHOT,sprite,x,y);
 		
 		this.game = game;
+		this.pool = pool;
 		
-		dy = moveSpeed;
+		launch();
 	}
-
+	
 	/**
-	 * Request that this shot moved based on time elapsed
+	 * Check whether this shot has hit something
 	 * 
-	 * @param delta The time that has elapsed since last move
+	 * @return True if the shot has been used
 	 */
-    @Override
-	public void move(long delta) {
-		// proceed with normal move
-		super.move(delta);
+	boolean isUsed() {
+		return used;
+	}
+	
+	/**
+	 * Mark this shot as having hit something or not, e.g. when restoring
+	 * a snapshot
+	 * 
+	 * @param used True if the shot has been used
+	 */
+	void setUsed(boolean used) {
+		this.used = used;
+	}
+	
+	/**
+	 * Bring a shot which has been removed back into the game as if it
+	 * had just been created
+	 * 
+	 * @param x The initial x location of the shot
+	 * @param y The initial y location of the shot
+	 */
+	void reset(int x,int y) {
+		spawn(x,y);
+		used = false;
 		
-		// if we shot off the screen, remove ourselves
-		if (y < -100) {
-			game.removeEntity(this);
-		}
+		launch();
+	}
+	
+	/**
+	 * Set the shot moving up the screen towards the aliens
+	 */
+	private void launch() {
+		setVerticalMovement(moveSpeed);
+		
+		setCollision(LAYER_SHOT,LAYER_ALIEN);
 	}
 	
+	/**
+	 * Notification that this shot has been removed from the game, at
+	 * which point it can go back to its pool
+	 */
+    @Override
+	protected void removed() {
+		if (pool != null) {
+			pool.release(this);
+		}
+	}
+
 	/**
 	 * Notification that this shot has collided with another
 	 * entity
@@ -59,14 +102,15 @@ public class ShotEntity extends Entity {
 			return;
 		}
 		
-		// if we've hit an alien, kill it!
-		if (other instanceof AlienEntity) {
+		// if we've hit an alien, kill it! (unless another shot
+		// already got it this tick)
+		if (other instanceof AlienEntity && other.isAlive()) {
 			// remove the affected entities
 			game.removeEntity(this);
 			game.removeEntity(other);
 			
 			// notify the game that the alien has been killed
-			game.notifyAlienKilled();
+			game.notifyAlienKilled((AlienEntity) other);
 			used = true;
 		}
 	}
@@ -0,0 +1,129 @@
+package spaceinvaders;
+
+/**
+ * A bounded pool of shot entities.  Shots are handed out by acquire()
+ * and come back to the pool automatically when they are removed from the
+ * game, so a steady rate of fire doesn't generate any garbage once the
+ * pool has warmed up.  If more shots are released than the pool can hold
+ * the extras are simply left for the garbage collector.
+ *
+ * @author Tim Vaughan
+ */
+public class ShotPool {
+
+    /**
+     * The game the shots belong to.
+     */
+    private final GameWorld game;
+
+    /**
+     * Sprite reference used for new shots.
+     */
+    private final String ref;
+
+    /**
+     * Shots available for reuse.
+     */
+    private final ShotEntity[] free;
+
+    /**
+     * Number of shots available for reuse.
+     */
+    private int freeCount;
+
+    /**
+     * Number of acquisitions satisfied from the pool, and the number
+     * which required a new shot to be created.
+     */
+    private long hits, misses;
+
+    /**
+     * Number of shots currently in play, and the most there have ever been.
+     */
+    private int live, highWaterMark;
+
+    /**
+     * Create a new empty pool.
+     *
+     * @param game The game the shots belong to
+     * @param ref The sprite reference for shots
+     * @param capacity Maximum number of shots held for reuse
+     */
+    public ShotPool(GameWorld game, String ref, int capacity) {
+        this.game = game;
+        this.ref = ref;
+        this.free = new ShotEntity[capacity];
+    }
+
+    /**
+     * Put a shot into play at the given location, reusing a pooled shot
+     * if there is one.
+     *
+     * @param x The initial x location of the shot
+     * @param y The initial y location of the shot
+     * @return the shot
+     */
+    public ShotEntity acquire(int x, int y) {
+        ShotEntity shot;
+        if (freeCount > 0) {
+            hits++;
+            shot = free[--freeCount];
+            free[freeCount] = null;
+            shot.reset(x, y);
+        } else {
+            misses++;
+            shot = new ShotEntity(game, this, ref, x, y);
+        }
+
+        live++;
+        highWaterMark = Math.max(highWaterMark, live);
+
+        return shot;
+    }
+
+    /**
+     * Return a shot which has been removed from the game to the pool.
+     *
+     * @param shot the shot
+     */
+    void release(ShotEntity shot) {
+        live--;
+        if (freeCount < free.length) {
+            free[freeCount++] = shot;
+        }
+    }
+
+    /**
+     * @return number of acquisitions satisfied by reusing a shot
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of acquisitions which required a new shot
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the most shots that have been in play at once
+     */
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * @return number of shots currently in play
+     */
+    public int getLiveCount() {
+        return live;
+    }
+
+    @Override
+    public String toString() {
+        return "Shot pool: " + hits + " hits, " + misses + " misses, high-water mark "
+                + highWaterMark + ", " + freeCount + "/" + free.length + " free";
+    }
+}
@@ -9,20 +9,59 @@ import java.awt.Image;
  * not the location. This allows us to use a single sprite in
  * lots of different places without having to store multiple 
  * copies of the image.
+ * <p>
+ * A sprite either has an image of its own or is a rectangle of a
+ * SpriteAtlas shared with other sprites, in which case drawing it copies
+ * just that rectangle out of the atlas.
  * 
  * @author Kevin Glass
  */
 public class Sprite {
-	/** The image to be drawn for this sprite */
-	private Image image;
+	/** The image to be drawn for this sprite, or null if it's part of an atlas */
+	private final Image image;
+	/** The atlas containing this sprite, or null if it has its own image */
+	private final SpriteAtlas atlas;
+	/** The location of this sprite within its atlas */
+	private final int atlasX, atlasY;
+	/** The shape of this sprite, including its collision mask */
+	private final SpriteShape shape;
+	/** The width of the image, cached to avoid asking the image each time */
+	private final int width;
+	/** The height of the image, cached to avoid asking the image each time */
+	private final int height;
 	
 	/**
 	 * Create a new sprite based on an image
 	 * 
 	 * @param image The image that is this sprite
+	 * @param shape The shape of this sprite
 	 */
-	public Sprite(Image image) {
+	public Sprite(Image image,SpriteShape shape) {
 		this.image = image;
+		this.atlas = null;
+		this.atlasX = 0;
+		this.atlasY = 0;
+		this.shape = shape;
+		this.width = shape.getWidth();
+		this.height = shape.getHeight();
+	}
+	
+	/**
+	 * Create a new sprite based on a rectangle of an atlas
+	 * 
+	 * @param atlas The atlas containing the sprite's image
+	 * @param x The x location of the sprite's image within the atlas
+	 * @param y The y location of the sprite's image within the atlas
+	 * @param shape The shape of this sprite, which gives its size
+	 */
+	public Sprite(SpriteAtlas atlas,int x,int y,SpriteShape shape) {
+		this.image = null;
+		this.atlas = atlas;
+		this.atlasX = x;
+		this.atlasY = y;
+		this.shape = shape;
+		this.width = shape.getWidth();
+		this.height = shape.getHeight();
 	}
 	
 	/**
@@ -31,7 +70,7 @@ public class Sprite {
 	 * @return The width in pixels of this sprite
 	 */
 	public int getWidth() {
-		return image.getWidth(null);
+		return width;
 	}
 
 	/**
@@ -40,7 +79,25 @@ public class Sprite {
 	 * @return The height in pixels of this sprite
 	 */
 	public int getHeight() {
-		return image.getHeight(null);
+		return height;
+	}
+	
+	/**
+	 * Get the shape of the sprite, used for pixel accurate collisions
+	 * 
+	 * @return The shape of this sprite
+	 */
+	public SpriteShape getShape() {
+		return shape;
+	}
+	
+	/**
+	 * Get the atlas containing this sprite
+	 * 
+	 * @return The atlas, or null if the sprite has its own image
+	 */
+	public SpriteAtlas getAtlas() {
+		return atlas;
 	}
 	
 	/**
@@ -51,6 +108,10 @@ public class Sprite {
 	 * @param y The y location at which to draw the sprite
 	 */
 	public void draw(Graphics g,int x,int y) {
-		g.drawImage(image,x,y,null);
+		if (atlas != null) {
+			atlas.draw(g,atlasX,atlasY,width,height,x,y);
+		} else {
+			g.drawImage(image,x,y,null);
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,189 @@
+package spaceinvaders;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A single image holding a set of sprite images side by side, so that
+ * drawing any number of sprites only ever reads from one source surface.
+ * Each sprite is then just a rectangle of the atlas (see Sprite).
+ *
+ * The images are packed onto shelves: tallest first, left to right,
+ * starting a new shelf below the last whenever a row fills up.  This
+ * wastes little space for a handful of similar sized sprites.
+ *
+ * The packed pixels are always kept in an ordinary image in memory.
+ * Where there is a display they are also copied into a VolatileImage,
+ * which can live in video memory but may lose its contents at any time
+ * (e.g. when the screen mode changes).  validate() checks for this and
+ * copies the pixels back, and until that has succeeded sprites are drawn
+ * from the in-memory copy.
+ *
+ * @author Tim Vaughan
+ */
+public class SpriteAtlas {
+	/** Minimum width of the atlas in pixels */
+	private static final int MIN_WIDTH = 256;
+	/** Gap left between neighbouring images */
+	private static final int PADDING = 1;
+
+	/** The packed images */
+	private final BufferedImage pixels;
+	/** Accelerated copy of the packed images, or null if there's no display */
+	private VolatileImage accelerated;
+	/** Image currently drawn from */
+	private volatile Image current;
+	/** Position of each image within the atlas */
+	private final int[] regionX, regionY;
+
+	/**
+	 * Pack a set of images into a new atlas
+	 *
+	 * @param images The images to pack
+	 */
+	public SpriteAtlas(final BufferedImage[] images) {
+		int n = images.length;
+		regionX = new int[n];
+		regionY = new int[n];
+
+		// place the tallest images first so that each shelf is used well
+		Integer[] order = new Integer[n];
+		int width = MIN_WIDTH;
+		for (int i=0;i<n;i++) {
+			order[i] = i;
+			width = Math.max(width,images[i].getWidth());
+		}
+		Arrays.sort(order,new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a,Integer b) {
+				return images[b].getHeight() - images[a].getHeight();
+			}
+		});
+
+		int x = 0, y = 0, shelfHeight = 0;
+		for (int k=0;k<n;k++) {
+			int i = order[k];
+			if (x + images[i].getWidth() > width) {
+				x = 0;
+				y += shelfHeight + PADDING;
+				shelfHeight = 0;
+			}
+			regionX[i] = x;
+			regionY[i] = y;
+			x += images[i].getWidth() + PADDING;
+			shelfHeight = Math.max(shelfHeight,images[i].getHeight());
+		}
+
+		pixels = new BufferedImage(width,Math.max(1,y + shelfHeight),BufferedImage.TYPE_INT_ARGB);
+		Graphics g = pixels.getGraphics();
+		for (int i=0;i<n;i++) {
+			g.drawImage(images[i],regionX[i],regionY[i],null);
+		}
+		g.dispose();
+
+		current = pixels;
+		validate();
+	}
+
+	/**
+	 * Get the x location of an image within the atlas
+	 *
+	 * @param i The index of the image in the array the atlas was built from
+	 * @return The x location of its top left corner
+	 */
+	public int getRegionX(int i) {
+		return regionX[i];
+	}
+
+	/**
+	 * Get the y location of an image within the atlas
+	 *
+	 * @param i The index of the image in the array the atlas was built from
+	 * @return The y location of its top left corner
+	 */
+	public int getRegionY(int i) {
+		return regionY[i];
+	}
+
+	/**
+	 * Get the width of the atlas
+	 *
+	 * @return The width in pixels
+	 */
+	public int getWidth() {
+		return pixels.getWidth();
+	}
+
+	/**
+	 * Get the height of the atlas
+	 *
+	 * @return The height in pixels
+	 */
+	public int getHeight() {
+		return pixels.getHeight();
+	}
+
+	/**
+	 * Make sure the accelerated copy of the atlas is usable, creating or
+	 * restoring it if necessary.  Should be called before drawing each
+	 * frame.
+	 */
+	public synchronized void validate() {
+		if (GraphicsEnvironment.isHeadless()) {
+			return;
+		}
+
+		GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+
+		boolean restore = false;
+		if (accelerated == null) {
+			accelerated = gc.createCompatibleVolatileImage(pixels.getWidth(),pixels.getHeight(),Transparency.BITMASK);
+			restore = true;
+		} else {
+			switch (accelerated.validate(gc)) {
+				case VolatileImage.IMAGE_INCOMPATIBLE:
+					accelerated.flush();
+					accelerated = gc.createCompatibleVolatileImage(pixels.getWidth(),pixels.getHeight(),Transparency.BITMASK);
+					restore = true;
+					break;
+				case VolatileImage.IMAGE_RESTORED:
+					restore = true;
+					break;
+			}
+		}
+
+		if (restore) {
+			Graphics2D g = accelerated.createGraphics();
+			g.setComposite(AlphaComposite.Src);
+			g.drawImage(pixels,0,0,null);
+			g.dispose();
+		}
+
+		// fall back on the in-memory copy if the contents were lost again
+		current = accelerated.contentsLost() ? pixels : accelerated;
+	}
+
+	/**
+	 * Draw a rectangle of the atlas onto the graphics context provided
+	 *
+	 * @param g The graphics context on which to draw
+	 * @param sx The x location of the rectangle within the atlas
+	 * @param sy The y location of the rectangle within the atlas
+	 * @param width The width of the rectangle
+	 * @param height The height of the rectangle
+	 * @param x The x location at which to draw the rectangle
+	 * @param y The y location at which to draw the rectangle
+	 */
+	public void draw(Graphics g,int sx,int sy,int width,int height,int x,int y) {
+		g.drawImage(current,x,y,x + width,y + height,sx,sy,sx + width,sy + height,null);
+	}
+}
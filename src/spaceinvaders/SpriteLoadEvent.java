@@ -0,0 +1,53 @@
+package spaceinvaders;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event covering a sprite being loaded because it wasn't
+ * in a cache, either as a displayable sprite (SpriteStore) or just as a
+ * shape for the game rules (SpriteShapes).
+ *
+ * @author Tim Vaughan
+ */
+@Name("spaceinvaders.SpriteLoad")
+@Label("Sprite Load")
+@Category("Space Invaders")
+@Description("A sprite loaded on a cache miss")
+public class SpriteLoadEvent extends Event {
+
+    /**
+     * Reference to the sprite's image.
+     */
+    @Label("Reference")
+    String ref;
+
+    /**
+     * Cache the sprite was loaded into.
+     */
+    @Label("Cache")
+    String cache;
+
+    /**
+     * Time spent decoding the image.
+     */
+    @Label("Decode Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long decodeTime;
+
+    /**
+     * Width of the image.
+     */
+    @Label("Width")
+    int width;
+
+    /**
+     * Height of the image.
+     */
+    @Label("Height")
+    int height;
+}
@@ -0,0 +1,24 @@
+package spaceinvaders;
+
+/**
+ * Thrown when a sprite can't be found or decoded.
+ *
+ * @author Tim Vaughan
+ */
+public class SpriteLoadException extends RuntimeException {
+
+    /**
+     * Version of the serialised form.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Create a new exception.
+     *
+     * @param message description of the failure
+     * @param cause underlying exception, or null
+     */
+    public SpriteLoadException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
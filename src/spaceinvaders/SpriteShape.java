@@ -0,0 +1,126 @@
+package spaceinvaders;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * The geometry of a sprite as far as the game rules are concerned, i.e.
+ * its size and which of its pixels are solid.  Unlike Sprite this holds
+ * no displayable image, so it can be used without a display.
+ *
+ * The solid pixels are kept as a packed bit mask, one bit per pixel and
+ * a whole number of longs per row, so that two sprites can be checked for
+ * overlapping solid pixels 64 pixels at a time.
+ *
+ * @author Tim Vaughan
+ */
+public class SpriteShape {
+	/** The width of the sprite in pixels */
+	private final int width;
+	/** The height of the sprite in pixels */
+	private final int height;
+	/** The number of longs used to hold each row of the mask */
+	private final int wordsPerRow;
+	/** The mask of solid pixels, row by row, lowest bit leftmost */
+	private final long[] mask;
+
+	/**
+	 * Create a sprite shape from an image, treating every pixel which
+	 * isn't fully transparent as solid
+	 *
+	 * @param image The image of the sprite
+	 */
+	public SpriteShape(BufferedImage image) {
+		this.width = image.getWidth();
+		this.height = image.getHeight();
+		this.wordsPerRow = (width + 63) / 64;
+		this.mask = new long[wordsPerRow * height];
+
+		for (int y=0;y<height;y++) {
+			for (int x=0;x<width;x++) {
+				if ((image.getRGB(x,y) >>> 24) != 0) {
+					mask[y*wordsPerRow + (x >>> 6)] |= 1L << x;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the width of the sprite
+	 *
+	 * @return The width in pixels of this sprite
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Get the height of the sprite
+	 *
+	 * @return The height in pixels of this sprite
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Check whether a pixel of the sprite is solid
+	 *
+	 * @param x The x location of the pixel within the sprite
+	 * @param y The y location of the pixel within the sprite
+	 * @return True if the pixel is solid
+	 */
+	public boolean isSolid(int x,int y) {
+		return (mask[y*wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+	}
+
+	/**
+	 * Get 64 pixels of a row of the mask, starting at any pixel.
+	 *
+	 * @param row The row of the mask
+	 * @param offset The first pixel, which ends up in the lowest bit
+	 * @return The mask bits, with pixels beyond the row clear
+	 */
+	private long bitsAt(int row,int offset) {
+		int word = offset >>> 6;
+		int shift = offset & 63;
+		int base = row * wordsPerRow;
+
+		long bits = word < wordsPerRow ? mask[base + word] >>> shift : 0;
+		if (shift != 0 && word + 1 < wordsPerRow) {
+			bits |= mask[base + word + 1] << (64 - shift);
+		}
+		return bits;
+	}
+
+	/**
+	 * Check whether two sprites drawn at the given locations have any
+	 * solid pixels in common. Only the rows of the masks within the
+	 * overlap of the two bounding boxes are examined.
+	 *
+	 * @param a The first sprite
+	 * @param ax The x location of the first sprite
+	 * @param ay The y location of the first sprite
+	 * @param b The second sprite
+	 * @param bx The x location of the second sprite
+	 * @param by The y location of the second sprite
+	 * @return True if the sprites overlap
+	 */
+	public static boolean overlaps(SpriteShape a,int ax,int ay,SpriteShape b,int bx,int by) {
+		int x0 = Math.max(ax,bx), x1 = Math.min(ax + a.width,bx + b.width);
+		int y0 = Math.max(ay,by), y1 = Math.min(ay + a.height,by + b.height);
+
+		for (int y=y0;y<y1;y++) {
+			for (int x=x0;x<x1;x+=64) {
+				long bits = a.bitsAt(y - ay,x - ax) & b.bitsAt(y - by,x - bx);
+				if (x1 - x < 64) {
+					bits &= (1L << (x1 - x)) - 1;
+				}
+				if (bits != 0) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+}
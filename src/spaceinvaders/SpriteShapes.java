@@ -0,0 +1,93 @@
+package spaceinvaders;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URL;
+import java.util.HashMap;
+
+import javax.imageio.ImageIO;
+
+import jdk.jfr.EventType;
+
+/**
+ * A cache of sprite shapes used by the game rules.  Images are decoded
+ * into plain buffered images just long enough to build the collision
+ * masks, and nothing here touches the display, so the simulation can run
+ * on a headless machine.
+ * <p>
+ * [singleton]
+ * <p>
+ * @author Tim Vaughan
+ */
+public class SpriteShapes {
+	/** Flight recorder type of the load event, checked before creating one */
+	private static final EventType LOAD_EVENT = EventType.getEventType(SpriteLoadEvent.class);
+	
+	/** The single instance of this class */
+	private static SpriteShapes single = new SpriteShapes();
+	
+	/**
+	 * Get the single instance of this class 
+	 * 
+	 * @return The single instance of this class
+	 */
+	public static SpriteShapes get() {
+		return single;
+	}
+	
+	/** The cached shape map, from reference to shape */
+	private final HashMap<String,SpriteShape> shapes = new HashMap<String,SpriteShape>();
+	
+	/**
+	 * Retrieve the shape of a sprite
+	 * 
+	 * @param ref The reference to the image used for the sprite
+	 * @return The shape of the sprite
+	 * @throws SpriteLoadException if the image can't be loaded
+	 */
+	public synchronized SpriteShape getShape(String ref) {
+		SpriteShape shape = shapes.get(ref);
+		if (shape != null) {
+			return shape;
+		}
+		
+		SpriteLoadEvent event = LOAD_EVENT.isEnabled() ? new SpriteLoadEvent() : null;
+		if (event != null) {
+			event.begin();
+		}
+		
+		URL url = this.getClass().getClassLoader().getResource(ref);
+		if (url == null) {
+			throw new SpriteLoadException("Can't find ref: "+ref,null);
+		}
+		
+		BufferedImage image;
+		long decodeStart = System.nanoTime();
+		try {
+			image = ImageIO.read(url);
+		} catch (IOException e) {
+			throw new SpriteLoadException("Failed to load: "+ref,e);
+		}
+		if (image == null) {
+			throw new SpriteLoadException("Unknown image format: "+ref,null);
+		}
+		long decodeTime = System.nanoTime() - decodeStart;
+		
+		shape = new SpriteShape(image);
+		shapes.put(ref,shape);
+		
+		if (event != null) {
+			event.end();
+			if (event.shouldCommit()) {
+				event.ref = ref;
+				event.cache = "shapes";
+				event.decodeTime = decodeTime;
+				event.width = image.getWidth();
+				event.height = image.getHeight();
+				event.commit();
+			}
+		}
+		
+		return shape;
+	}
+}
@@ -7,21 +7,45 @@ import java.awt.Transparency;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.net.URL;
-import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import javax.imageio.ImageIO;
 
+import jdk.jfr.EventType;
+
 /**
  * A resource manager for sprites in the game. Its often quite important
  * how and where you get your game resources from. In most cases
  * it makes sense to have a central resource loader that goes away, gets
  * your resources and caches them for future use.
  * <p>
+ * Sprites are loaded in the background on a small pool of threads, so
+ * the game never has to wait for an image to be decoded.  The whole set
+ * of sprites the game uses should be requested up front with preload(),
+ * after which getSprite() is just a lookup.  Should a sprite be asked
+ * for before it has finished loading, getSprite() returns an invisible
+ * placeholder rather than waiting; getSpriteAsync() gives access to the
+ * load itself.  Failures are reported as SpriteLoadExceptions.
+ * <p>
+ * Once a set of sprites has been preloaded, every sprite loaded so far
+ * is packed into a single SpriteAtlas and replaced by a sprite drawing
+ * from it, so that a whole frame is drawn from one image.  Call
+ * validate() before drawing each frame so that the atlas can recover if
+ * its accelerated copy is lost.
+ * <p>
  * [singleton]
  * <p>
  * @author Kevin Glass
  */
 public class SpriteStore {
+	/** Flight recorder type of the load event, checked before creating one */
+	private static final EventType LOAD_EVENT = EventType.getEventType(SpriteLoadEvent.class);
+	
 	/** The single instance of this class */
 	private static SpriteStore single = new SpriteStore();
 	
@@ -34,25 +58,176 @@ public class SpriteStore {
 		return single;
 	}
 	
-	/** The cached sprite map, from reference to sprite instance */
-	private HashMap sprites = new HashMap();
+	/** The cached sprite map, from reference to (possibly unfinished) sprite load */
+	private final ConcurrentHashMap<String,CompletableFuture<Sprite>> sprites = new ConcurrentHashMap<String,CompletableFuture<Sprite>>();
+	
+	/** The decoded images of the sprites loaded so far, used to build atlases */
+	private final ConcurrentHashMap<String,BufferedImage> sources = new ConcurrentHashMap<String,BufferedImage>();
+	
+	/** The most recently built atlas, or null if none has been built */
+	private volatile SpriteAtlas atlas;
+	
+	/** The threads sprites are loaded on */
+	private final ExecutorService loader = Executors.newFixedThreadPool(
+			Math.min(4,Runtime.getRuntime().availableProcessors()),
+			new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r,"Sprite loader");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+	
+	/** Sprite returned in place of those which haven't finished loading */
+	private final Sprite placeholder;
+	
+	/**
+	 * Create the store
+	 */
+	private SpriteStore() {
+		BufferedImage image = new BufferedImage(1,1,BufferedImage.TYPE_INT_ARGB);
+		placeholder = new Sprite(image,new SpriteShape(image));
+	}
+	
+	/**
+	 * Start loading a set of sprites in parallel, in the background
+	 * 
+	 * @param refs The references to the images to load
+	 * @return A future which completes once all the sprites have loaded
+	 * and been packed into an atlas
+	 */
+	public CompletableFuture<Void> preload(String... refs) {
+		CompletableFuture<?>[] loads = new CompletableFuture<?>[refs.length];
+		for (int i=0;i<refs.length;i++) {
+			loads[i] = getSpriteAsync(refs[i]);
+		}
+		
+		return CompletableFuture.allOf(loads).thenRun(new Runnable() {
+			@Override
+			public void run() {
+				pack();
+			}
+		});
+	}
+	
+	/**
+	 * Pack every sprite loaded so far into a new atlas, and replace the
+	 * cached sprites with ones drawn from it.
+	 */
+	private synchronized void pack() {
+		String[] refs = sources.keySet().toArray(new String[0]);
+		BufferedImage[] images = new BufferedImage[refs.length];
+		for (int i=0;i<refs.length;i++) {
+			images[i] = sources.get(refs[i]);
+		}
+		
+		SpriteAtlas packed = new SpriteAtlas(images);
+		for (int i=0;i<refs.length;i++) {
+			SpriteShape shape = sprites.get(refs[i]).join().getShape();
+			sprites.put(refs[i],CompletableFuture.completedFuture(
+					new Sprite(packed,packed.getRegionX(i),packed.getRegionY(i),shape)));
+		}
+		atlas = packed;
+	}
+	
+	/**
+	 * Make sure the sprite atlas is ready to draw from, restoring it if
+	 * its accelerated copy has been lost. Should be called before drawing
+	 * each frame.
+	 */
+	public void validate() {
+		SpriteAtlas current = atlas;
+		if (current != null) {
+			current.validate();
+		}
+	}
+	
+	/**
+	 * Retrieve a sprite from the store, starting to load it if necessary
+	 * 
+	 * @param ref The reference to the image to use for the sprite
+	 * @return A future which completes with the sprite, or with a
+	 * SpriteLoadException if it can't be loaded
+	 */
+	public CompletableFuture<Sprite> getSpriteAsync(final String ref) {
+		CompletableFuture<Sprite> sprite = sprites.get(ref);
+		if (sprite != null) {
+			return sprite;
+		}
+		
+		sprite = new CompletableFuture<Sprite>();
+		CompletableFuture<Sprite> existing = sprites.putIfAbsent(ref,sprite);
+		if (existing != null) {
+			return existing;
+		}
+		
+		final CompletableFuture<Sprite> load = sprite;
+		loader.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					load.complete(loadSprite(ref));
+				} catch (SpriteLoadException e) {
+					load.completeExceptionally(e);
+				} catch (RuntimeException e) {
+					load.completeExceptionally(new SpriteLoadException("Failed to load: "+ref,e));
+				}
+			}
+		});
+		
+		return load;
+	}
 	
 	/**
-	 * Retrieve a sprite from the store
+	 * Retrieve a sprite from the store without waiting for it to load
 	 * 
 	 * @param ref The reference to the image to use for the sprite
-	 * @return A sprite instance containing an accelerate image of the request reference
+	 * @return A sprite instance containing an accelerate image of the
+	 * request reference, or an invisible placeholder if the sprite is
+	 * still loading
+	 * @throws SpriteLoadException if the sprite couldn't be loaded
 	 */
 	public Sprite getSprite(String ref) {
-		// if we've already got the sprite in the cache
-		// then just return the existing version
-		if (sprites.get(ref) != null) {
-			return (Sprite) sprites.get(ref);
+		CompletableFuture<Sprite> sprite = getSpriteAsync(ref);
+		
+		if (!sprite.isDone()) {
+			return placeholder;
+		}
+		
+		try {
+			return sprite.join();
+		} catch (CompletionException e) {
+			throw (SpriteLoadException) e.getCause();
+		}
+	}
+	
+	/**
+	 * Drop a sprite from the cache, so that the next request for it loads
+	 * it again. Sprites already handed out remain usable.
+	 * 
+	 * @param ref The reference to the image used for the sprite
+	 */
+	void evict(String ref) {
+		sprites.remove(ref);
+		sources.remove(ref);
+	}
+	
+	/**
+	 * Load a sprite. Runs on one of the loader threads.
+	 * 
+	 * @param ref The reference to the image to use for the sprite
+	 * @return The loaded sprite
+	 * @throws SpriteLoadException if the sprite can't be loaded
+	 */
+	private Sprite loadSprite(String ref) {
+		SpriteLoadEvent event = LOAD_EVENT.isEnabled() ? new SpriteLoadEvent() : null;
+		if (event != null) {
+			event.begin();
 		}
 		
-		// otherwise, go away and grab the sprite from the resource
-		// loader
-		BufferedImage sourceImage = null;
+		BufferedImage sourceImage;
+		long decodeStart = System.nanoTime();
 		
 		try {
 			// The ClassLoader.getResource() ensures we get the sprite
@@ -62,38 +237,50 @@ public class SpriteStore {
 			URL url = this.getClass().getClassLoader().getResource(ref);
 			
 			if (url == null) {
-				fail("Can't find ref: "+ref);
+				throw new SpriteLoadException("Can't find ref: "+ref,null);
 			}
 			
 			// use ImageIO to read the image in
 			sourceImage = ImageIO.read(url);
 		} catch (IOException e) {
-			fail("Failed to load: "+ref);
+			throw new SpriteLoadException("Failed to load: "+ref,e);
+		}
+		
+		if (sourceImage == null) {
+			throw new SpriteLoadException("Unknown image format: "+ref,null);
+		}
+		long decodeTime = System.nanoTime() - decodeStart;
+		
+		// create an accelerated image of the right size to store our sprite in,
+		// unless there's no screen to accelerate it for
+		Image image = sourceImage;
+		if (!GraphicsEnvironment.isHeadless()) {
+			GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+			image = gc.createCompatibleImage(sourceImage.getWidth(),sourceImage.getHeight(),Transparency.BITMASK);
+			
+			// draw our source image into the accelerated image
+			image.getGraphics().drawImage(sourceImage,0,0,null);
 		}
 		
-		// create an accelerated image of the right size to store our sprite in
-		GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
-		Image image = gc.createCompatibleImage(sourceImage.getWidth(),sourceImage.getHeight(),Transparency.BITMASK);
+		// build the collision mask while we still have the source
+		// image to hand
+		SpriteShape shape = new SpriteShape(sourceImage);
 		
-		// draw our source image into the accelerated image
-		image.getGraphics().drawImage(sourceImage,0,0,null);
+		// and keep the image for packing into the atlas
+		sources.put(ref,sourceImage);
 		
-		// create a sprite, add it the cache then return it
-		Sprite sprite = new Sprite(image);
-		sprites.put(ref,sprite);
+		if (event != null) {
+			event.end();
+			if (event.shouldCommit()) {
+				event.ref = ref;
+				event.cache = "sprites";
+				event.decodeTime = decodeTime;
+				event.width = sourceImage.getWidth();
+				event.height = sourceImage.getHeight();
+				event.commit();
+			}
+		}
 		
-		return sprite;
-	}
-	
-	/**
-	 * Utility method to handle resource loading failure
-	 * 
-	 * @param message The message to display on failure
-	 */
-	private void fail(String message) {
-		// we're pretty dramatic here, if a resource isn't available
-		// we dump the message and exit the game
-		System.err.println(message);
-		System.exit(0);
+		return new Sprite(image,shape);
 	}
-}
\ No newline at end of file
+}
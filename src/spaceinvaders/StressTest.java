@@ -0,0 +1,132 @@
+package spaceinvaders;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Load test: plays games with SweepBot on an arbitrarily large
+ * configuration, as fast as they will go, printing throughput every
+ * second.  Games are restarted as they finish.  Useful for finding how
+ * many entities a machine can keep up with.
+ * <p>
+ * Run headless, e.g.
+ * <pre>
+ * java -Djava.awt.headless=true spaceinvaders.StressTest --playfield 4000x3000 \
+ *     --aliens 10x60 --formations 5 --fire-interval 0 --shot-pool 1024
+ * </pre>
+ * Besides the game settings understood by GameConfig.setOption(), the
+ * options are:
+ * <pre>
+ * --seconds S          how long to run for (30)
+ * --render             also draw every tick into an off-screen frame
+ * </pre>
+ *
+ * @author Tim Vaughan
+ */
+public class StressTest {
+
+    /**
+     * Length of one step (ms), as in the real game.
+     */
+    private static final double TICK_LENGTH = 1000.0 / 60;
+
+    /**
+     * Interval between progress reports (ns).
+     */
+    private static final long REPORT_INTERVAL = 1000000000L;
+
+    /**
+     * Run the test.
+     *
+     * @param args options, as above
+     */
+    public static void main(String[] args) {
+        GameConfig config = new GameConfig();
+        double seconds = 30;
+        boolean render = false;
+        GameWorld world = null;
+        try {
+            for (int n = 0; n < args.length; n++) {
+                String option = args[n];
+                if (option.equals("--render")) {
+                    render = true;
+                    continue;
+                }
+                if (n + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing value for " + option);
+                }
+
+                String value = args[++n];
+                if (option.equals("--seconds")) {
+                    seconds = Double.parseDouble(value);
+                } else if (!config.setOption(option, value)) {
+                    throw new IllegalArgumentException("Unknown option " + option);
+                }
+            }
+
+            // fails if the waves don't fit the playfield
+            world = new GameWorld(config);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: java spaceinvaders.StressTest " + GameConfig.OPTIONS_USAGE
+                    + " [--seconds S] [--render]");
+            System.exit(2);
+        }
+
+        GameRenderer renderer = null;
+        BufferedImage frame = null;
+        if (render) {
+            SpriteStore.get().preload(GameWorld.SPRITES).join();
+            renderer = new GameRenderer(world);
+            frame = new BufferedImage(world.getWidth(), world.getHeight(), BufferedImage.TYPE_INT_RGB);
+        }
+
+        System.out.printf("%dx%d playfield, %d formations of %dx%d aliens (%d in all), firing interval %.0f ms%n",
+                config.getWidth(), config.getHeight(), config.getFormations(),
+                config.getAlienRows(), config.getAlienColumns(), world.getAlienCount(), config.getFiringInterval());
+
+        ShotPool shots = world.getShotPool();
+        EntityStore store = world.getEntityStore();
+        long start = System.nanoTime(), end = start + (long) (seconds * 1e9);
+        long windowStart = start, now = start;
+        long totalTicks = 0, windowTicks = 0, entityUpdates = 0;
+        int games = 0, mostEntities = 0;
+        while (now < end) {
+            if (world.isGameOverConditionMet()) {
+                world.reset();
+                if (renderer != null) {
+                    renderer.redrawAll();
+                }
+                games++;
+            }
+
+            // every entity in play at the start of the tick is updated
+            entityUpdates += store.size();
+            world.step(TICK_LENGTH, SweepBot.input(world.getIterations()));
+            if (renderer != null) {
+                renderer.render(frame, 1.0, GameRenderer.OVERLAY_NONE);
+            }
+            totalTicks++;
+            windowTicks++;
+            mostEntities = Math.max(mostEntities, store.size());
+
+            // only look at the clock every so often
+            if ((windowTicks & 15) != 0) {
+                continue;
+            }
+            now = System.nanoTime();
+            if (now - windowStart >= REPORT_INTERVAL) {
+                System.out.printf("%6.1f s: %9.0f ticks/s, %6d entities, %6d aliens, %5d shots, %d games finished%n",
+                        (now - start) / 1e9, windowTicks * 1e9 / (now - windowStart),
+                        store.size(), world.getAlienCount(), shots.getLiveCount(), games);
+                windowStart = now;
+                windowTicks = 0;
+            }
+        }
+
+        double elapsed = (now - start) / 1e9;
+        System.out.printf("%d ticks in %.1f s: %.0f ticks/s, %.3g entity updates/s, at most %d entities"
+                + " and %d shots, %d games finished%n",
+                totalTicks, elapsed, totalTicks / elapsed, entityUpdates / elapsed,
+                mostEntities, shots.getHighWaterMark(), games);
+    }
+}
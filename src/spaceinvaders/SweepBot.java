@@ -0,0 +1,31 @@
+package spaceinvaders;
+
+/**
+ * The scripted player used by the benchmarks and load tests: fires
+ * constantly while sweeping from side to side, 40 ticks each way.  It
+ * depends only on the tick, so every run plays exactly the same game.
+ *
+ * @author Tim Vaughan
+ */
+public final class SweepBot {
+
+    /**
+     * Number of ticks spent moving in each direction.
+     */
+    private static final int SWEEP_TICKS = 40;
+
+    /**
+     * Not instantiable.
+     */
+    private SweepBot() {
+    }
+
+    /**
+     * @param tick number of steps since the game began
+     * @return bitwise OR of the GameWorld.INPUT_ constants
+     */
+    public static int input(int tick) {
+        int direction = (tick / SWEEP_TICKS) % 2 == 0 ? GameWorld.INPUT_LEFT : GameWorld.INPUT_RIGHT;
+        return GameWorld.INPUT_FIRE | direction;
+    }
+}
@@ -0,0 +1,90 @@
+package spaceinvaders;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+/**
+ * A piece of text which never changes, rendered once into an image so
+ * that drawing it each frame is a single image copy rather than laying
+ * out and rasterising the glyphs again.
+ *
+ * @author Tim Vaughan
+ */
+public class TextLayer {
+
+    /**
+     * The rendered text.
+     */
+    private final BufferedImage image;
+
+    /**
+     * Distance from the top of the image to the text's baseline.
+     */
+    private final int ascent;
+
+    /**
+     * Render some text.
+     *
+     * @param text the text
+     * @param font font to render it in
+     * @param color color to render it in
+     */
+    public TextLayer(String text, Font font, Color color) {
+        FontMetrics metrics = getMetrics(font);
+        ascent = metrics.getAscent();
+
+        image = createImage(metrics.stringWidth(text), ascent + metrics.getDescent());
+        Graphics g = image.getGraphics();
+        g.setFont(font);
+        g.setColor(color);
+        g.drawString(text, 0, ascent);
+        g.dispose();
+    }
+
+    /**
+     * Draw the text, positioned as Graphics.drawString() would position it.
+     *
+     * @param g graphics context to draw on
+     * @param x x location of the start of the text
+     * @param y y location of the text's baseline
+     */
+    public void draw(Graphics g, int x, int y) {
+        g.drawImage(image, x, y - ascent, null);
+    }
+
+    /**
+     * @param font a font
+     * @return metrics of the font, as rendered into our images
+     */
+    static FontMetrics getMetrics(Font font) {
+        Graphics g = createImage(1, 1).getGraphics();
+        FontMetrics metrics = g.getFontMetrics(font);
+        g.dispose();
+        return metrics;
+    }
+
+    /**
+     * Create a transparent image to render text into, compatible with the
+     * screen where there is one.
+     *
+     * @param width width of the image
+     * @param height height of the image
+     * @return the new image
+     */
+    static BufferedImage createImage(int width, int height) {
+        width = Math.max(width, 1);
+        height = Math.max(height, 1);
+
+        if (GraphicsEnvironment.isHeadless()) {
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+        return GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice().getDefaultConfiguration()
+                .createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+    }
+}
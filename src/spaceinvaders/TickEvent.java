@@ -0,0 +1,75 @@
+package spaceinvaders;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event covering one call to GameWorld.step(), with the
+ * time spent in each phase and what happened.  GameWorld only creates
+ * one while the event type is enabled, so ticks allocate nothing when
+ * it isn't being recorded.
+ *
+ * @author Tim Vaughan
+ */
+@Name("spaceinvaders.Tick")
+@Label("Game Tick")
+@Category("Space Invaders")
+@Description("One step of the game simulation")
+public class TickEvent extends Event {
+
+    /**
+     * Number of the tick within the game.
+     */
+    @Label("Tick")
+    int tick;
+
+    /**
+     * Time spent applying input and moving entities.
+     */
+    @Label("Move")
+    @Timespan(Timespan.NANOSECONDS)
+    long move;
+
+    /**
+     * Time spent finding and resolving collisions.
+     */
+    @Label("Collide")
+    @Timespan(Timespan.NANOSECONDS)
+    long collide;
+
+    /**
+     * Time spent removing dead entities.
+     */
+    @Label("Remove")
+    @Timespan(Timespan.NANOSECONDS)
+    long remove;
+
+    /**
+     * Time spent applying game logic.
+     */
+    @Label("Logic")
+    @Timespan(Timespan.NANOSECONDS)
+    long logic;
+
+    /**
+     * Number of narrow phase collision tests performed.
+     */
+    @Label("Collision Tests")
+    int collisionTests;
+
+    /**
+     * Number of entities removed.
+     */
+    @Label("Removals")
+    int removals;
+
+    /**
+     * Number of entities alive at the end of the tick.
+     */
+    @Label("Entities")
+    int entities;
+}
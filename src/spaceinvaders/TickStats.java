@@ -0,0 +1,227 @@
+package spaceinvaders;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Timing and counters for each phase of the game's ticks and frames.
+ *
+ * GameWorld times the phases of each step with System.nanoTime() and
+ * reports them here along with how many collision tests were performed
+ * and how many entities were removed; GamePanel does the same for the
+ * time taken to paint each frame.  Each phase feeds a LatencyHistogram,
+ * and everything is recorded and read without locking, so the game
+ * thread never waits for a monitoring client.
+ *
+ * register() publishes the statistics as a platform MBean under
+ * "spaceinvaders:type=TickStats".
+ *
+ * @author Tim Vaughan
+ */
+public class TickStats implements TickStatsMXBean {
+
+    /**
+     * Phase covering a whole call to GameWorld.step().
+     */
+    public static final int TICK = 0;
+
+    /**
+     * Phase in which entities are moved.
+     */
+    public static final int MOVE = 1;
+
+    /**
+     * Phase in which collisions are found and resolved.
+     */
+    public static final int COLLIDE = 2;
+
+    /**
+     * Phase in which dead entities are removed.
+     */
+    public static final int REMOVE = 3;
+
+    /**
+     * Phase in which game logic (the formation turning) is applied.
+     */
+    public static final int LOGIC = 4;
+
+    /**
+     * Phase in which a frame is painted.
+     */
+    public static final int PAINT = 5;
+
+    /**
+     * Names of the phases, as published.
+     */
+    private static final String[] PHASE_NAMES = {"tick", "move", "collide", "remove", "logic", "paint"};
+
+    /**
+     * Duration of each phase (ns).
+     */
+    private final LatencyHistogram[] phases = new LatencyHistogram[PHASE_NAMES.length];
+
+    /**
+     * Number of ticks, collision tests and removals recorded.
+     */
+    private final AtomicLong ticks = new AtomicLong(), collisionTests = new AtomicLong(),
+            removals = new AtomicLong();
+
+    /**
+     * Number of entities alive at the end of the last tick.
+     */
+    private volatile int entitiesAlive;
+
+    /**
+     * Create an empty set of statistics.
+     */
+    public TickStats() {
+        for (int p = 0; p < phases.length; p++) {
+            phases[p] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Record the duration of a phase.
+     *
+     * @param phase one of the phase constants
+     * @param nanos duration (ns)
+     */
+    public void recordPhase(int phase, long nanos) {
+        phases[phase].record(nanos);
+    }
+
+    /**
+     * Record the counters of a tick.
+     *
+     * @param tests number of narrow phase collision tests performed
+     * @param removed number of entities removed
+     * @param alive number of entities alive at the end of the tick
+     */
+    public void recordTick(int tests, int removed, int alive) {
+        ticks.incrementAndGet();
+        collisionTests.addAndGet(tests);
+        removals.addAndGet(removed);
+        entitiesAlive = alive;
+    }
+
+    /**
+     * @param phase one of the phase constants
+     * @return histogram of the durations of the phase (ns)
+     */
+    public LatencyHistogram getPhase(int phase) {
+        return phases[phase];
+    }
+
+    /**
+     * Publish these statistics as a platform MBean, replacing any
+     * already published.
+     *
+     * @throws JMException if registration fails
+     */
+    public void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("spaceinvaders:type=TickStats");
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(this, name);
+    }
+
+    /**
+     * @param percentile percentile to find (0-100), or a negative number
+     * for the maximum
+     * @return the percentile of each phase (us)
+     */
+    private Map<String, Double> micros(double percentile) {
+        Map<String, Double> result = new LinkedHashMap<String, Double>();
+        for (int p = 0; p < phases.length; p++) {
+            long nanos = percentile < 0 ? phases[p].getMax() : phases[p].getPercentile(percentile);
+            result.put(PHASE_NAMES[p], nanos / 1e3);
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Double> getMedianMicros() {
+        return micros(50);
+    }
+
+    @Override
+    public Map<String, Double> getP99Micros() {
+        return micros(99);
+    }
+
+    @Override
+    public Map<String, Double> getMaxMicros() {
+        return micros(-1);
+    }
+
+    @Override
+    public Map<String, Long> getSamples() {
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (int p = 0; p < phases.length; p++) {
+            result.put(PHASE_NAMES[p], phases[p].getCount());
+        }
+        return result;
+    }
+
+    @Override
+    public long getTicks() {
+        return ticks.get();
+    }
+
+    @Override
+    public long getCollisionTests() {
+        return collisionTests.get();
+    }
+
+    @Override
+    public double getCollisionTestsPerTick() {
+        long n = ticks.get();
+        return n == 0 ? 0 : collisionTests.get() / (double) n;
+    }
+
+    @Override
+    public long getRemovals() {
+        return removals.get();
+    }
+
+    @Override
+    public double getRemovalsPerTick() {
+        long n = ticks.get();
+        return n == 0 ? 0 : removals.get() / (double) n;
+    }
+
+    @Override
+    public int getEntitiesAlive() {
+        return entitiesAlive;
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram phase : phases) {
+            phase.reset();
+        }
+        ticks.set(0);
+        collisionTests.set(0);
+        removals.set(0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int p = 0; p < phases.length; p++) {
+            sb.append(String.format("%s p50 %.1f us, p99 %.1f us, max %.1f us; ", PHASE_NAMES[p],
+                    phases[p].getPercentile(50) / 1e3, phases[p].getPercentile(99) / 1e3,
+                    phases[p].getMax() / 1e3));
+        }
+        sb.append(String.format("%.1f collision tests/tick, %.3f removals/tick, %d alive",
+                getCollisionTestsPerTick(), getRemovalsPerTick(), entitiesAlive));
+        return sb.toString();
+    }
+}
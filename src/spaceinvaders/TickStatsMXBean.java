@@ -0,0 +1,68 @@
+package spaceinvaders;
+
+import java.util.Map;
+
+/**
+ * Management interface of TickStats, for watching a running game with
+ * jconsole or any other JMX client.  Durations are in microseconds and
+ * maps are keyed by phase name.
+ *
+ * @author Tim Vaughan
+ */
+public interface TickStatsMXBean {
+
+    /**
+     * @return median duration of each phase (us)
+     */
+    Map<String, Double> getMedianMicros();
+
+    /**
+     * @return 99th percentile duration of each phase (us)
+     */
+    Map<String, Double> getP99Micros();
+
+    /**
+     * @return longest duration of each phase (us)
+     */
+    Map<String, Double> getMaxMicros();
+
+    /**
+     * @return number of times each phase has been timed
+     */
+    Map<String, Long> getSamples();
+
+    /**
+     * @return number of ticks recorded
+     */
+    long getTicks();
+
+    /**
+     * @return number of narrow phase collision tests performed
+     */
+    long getCollisionTests();
+
+    /**
+     * @return average number of narrow phase collision tests per tick
+     */
+    double getCollisionTestsPerTick();
+
+    /**
+     * @return number of entities removed
+     */
+    long getRemovals();
+
+    /**
+     * @return average number of entities removed per tick
+     */
+    double getRemovalsPerTick();
+
+    /**
+     * @return number of entities alive at the end of the last tick
+     */
+    int getEntitiesAlive();
+
+    /**
+     * Forget everything recorded so far.
+     */
+    void reset();
+}
@@ -0,0 +1,378 @@
+package spaceinvaders;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.SplittableRandom;
+
+/**
+ * A batch of games stepped in lockstep, for training bots by
+ * reinforcement learning.  In the style of a vectorised gym environment,
+ * reset(seed) starts every game and step(actions) applies one action to
+ * each, after which the observations, rewards and done flags of all the
+ * games can be read from arrays which are allocated once and overwritten
+ * on every step.  Stepping allocates nothing.
+ * <p>
+ * An action is a bitwise OR of the GameWorld.INPUT_ constants, so there
+ * are ACTIONS of them, and is held for actionRepeat ticks.  The reward
+ * for a step is the number of aliens killed, plus WIN_REWARD or
+ * LOSS_REWARD if the game ended.  A game which ends is started again
+ * straight away, so its observation is then the first of the next game
+ * while its done flag reports the end of the last.
+ * <p>
+ * The games themselves are deterministic, so to give some variety each
+ * game starts with a random number (up to MAX_NOOPS) of ticks in which
+ * the player does nothing, drawn from a generator seeded by reset().
+ * <p>
+ * Each game's observation is getObservationSize() floats, all scaled to
+ * about 0-1:
+ * <pre>
+ * ship x / width, 1 if the ship can fire
+ * per formation: x / width, y / height, speed / 1000
+ * per formation, per row, per column: 1 if the alien is alive
+ * per shot, up to MAX_SHOTS: x / width, y / height (zero if absent)
+ * </pre>
+ * Observations are written into a float[], and also copied into a
+ * direct buffer in native byte order if one is asked for, so that they
+ * can be handed to native code without copying again.
+ * <p>
+ * Games are stepped one after another on the calling thread.  To use
+ * more cores, give each thread a VectorEnv of its own.  main() measures
+ * how many steps per second one thread manages.
+ *
+ * @author Tim Vaughan
+ */
+public class VectorEnv {
+
+    /**
+     * Number of distinct actions.
+     */
+    public static final int ACTIONS = 8;
+
+    /**
+     * Most shots included in an observation.
+     */
+    public static final int MAX_SHOTS = 16;
+
+    /**
+     * Most ticks of doing nothing at the start of each game.
+     */
+    public static final int MAX_NOOPS = 30;
+
+    /**
+     * Reward for winning and losing a game.
+     */
+    public static final float WIN_REWARD = 10, LOSS_REWARD = -10;
+
+    /**
+     * Length of one tick (ms), as in the real game.
+     */
+    private static final double TICK_LENGTH = 1000.0 / 60;
+
+    /**
+     * The games.
+     */
+    private final GameWorld[] worlds;
+
+    /**
+     * Formations of aliens of each game.
+     */
+    private final AlienFormation[][] formations;
+
+    /**
+     * Source of the random starts of each game.
+     */
+    private final SplittableRandom[] randoms;
+
+    /**
+     * Ticks each action is held for.
+     */
+    private final int actionRepeat;
+
+    /**
+     * Number of floats in each game's observation.
+     */
+    private final int observationSize;
+
+    /**
+     * Observations of every game, one after another.
+     */
+    private final float[] observations;
+
+    /**
+     * Copy of the observations in native memory, or null.
+     */
+    private final FloatBuffer observationBuffer;
+
+    /**
+     * Reward of every game for the last step.
+     */
+    private final float[] rewards;
+
+    /**
+     * Whether each game ended on the last step.
+     */
+    private final boolean[] dones;
+
+    /**
+     * Create a set of games.  They must be started with reset() before
+     * being stepped.
+     *
+     * @param count number of games
+     * @param config settings of the games
+     * @param actionRepeat number of ticks each action is held for
+     * @param direct true to also copy observations into a direct buffer
+     */
+    public VectorEnv(int count, GameConfig config, int actionRepeat, boolean direct) {
+        if (count < 1 || actionRepeat < 1) {
+            throw new IllegalArgumentException("Need at least one game and one tick per action");
+        }
+
+        this.actionRepeat = actionRepeat;
+        worlds = new GameWorld[count];
+        randoms = new SplittableRandom[count];
+        formations = new AlienFormation[count][];
+        for (int n = 0; n < count; n++) {
+            worlds[n] = new GameWorld(config);
+            formations[n] = worlds[n].getFormations();
+        }
+
+        observationSize = 2 + config.getFormations() * (3 + config.getAlienRows() * config.getAlienColumns())
+                + 2 * MAX_SHOTS;
+        observations = new float[count * observationSize];
+        observationBuffer = direct
+                ? ByteBuffer.allocateDirect(4 * observations.length).order(ByteOrder.nativeOrder()).asFloatBuffer()
+                : null;
+        rewards = new float[count];
+        dones = new boolean[count];
+    }
+
+    /**
+     * @return number of games
+     */
+    public int getCount() {
+        return worlds.length;
+    }
+
+    /**
+     * @return number of floats in each game's observation
+     */
+    public int getObservationSize() {
+        return observationSize;
+    }
+
+    /**
+     * @return observations of every game, one after another; overwritten
+     * by each reset() and step()
+     */
+    public float[] getObservations() {
+        return observations;
+    }
+
+    /**
+     * @return copy of the observations in native memory, or null if one
+     * wasn't asked for
+     */
+    public FloatBuffer getObservationBuffer() {
+        return observationBuffer;
+    }
+
+    /**
+     * @return reward of every game for the last step
+     */
+    public float[] getRewards() {
+        return rewards;
+    }
+
+    /**
+     * @return whether each game ended on the last step
+     */
+    public boolean[] getDones() {
+        return dones;
+    }
+
+    /**
+     * @param index index of a game
+     * @return the game, e.g. for drawing it
+     */
+    public GameWorld getWorld(int index) {
+        return worlds[index];
+    }
+
+    /**
+     * Start every game afresh.
+     *
+     * @param seed seed of the random starts of the games
+     */
+    public void reset(long seed) {
+        SplittableRandom seeds = new SplittableRandom(seed);
+        for (int n = 0; n < worlds.length; n++) {
+            randoms[n] = seeds.split();
+            startGame(n);
+            rewards[n] = 0;
+            dones[n] = false;
+        }
+        publish();
+    }
+
+    /**
+     * Apply an action to every game.
+     *
+     * @param actions action for each game, a bitwise OR of the
+     * GameWorld.INPUT_ constants
+     */
+    public void step(int[] actions) {
+        if (actions.length != worlds.length) {
+            throw new IllegalArgumentException("Expected " + worlds.length + " actions, got " + actions.length);
+        }
+        if (randoms[0] == null) {
+            throw new IllegalStateException("reset() must be called before step()");
+        }
+
+        for (int n = 0; n < worlds.length; n++) {
+            GameWorld world = worlds[n];
+            int input = actions[n] & (ACTIONS - 1);
+            int aliens = world.getAlienCount();
+
+            for (int tick = 0; tick < actionRepeat && !world.isGameOverConditionMet(); tick++) {
+                world.step(TICK_LENGTH, input);
+            }
+
+            float reward = aliens - world.getAlienCount();
+            boolean done = world.isGameOverConditionMet();
+            if (done) {
+                reward += world.isGameWon() ? WIN_REWARD : LOSS_REWARD;
+                startGame(n);
+            } else {
+                observe(n);
+            }
+
+            rewards[n] = reward;
+            dones[n] = done;
+        }
+        publish();
+    }
+
+    /**
+     * Start a game again, with its random start, and record its first
+     * observation.
+     *
+     * @param index index of the game
+     */
+    private void startGame(int index) {
+        GameWorld world = worlds[index];
+        world.reset();
+
+        int noops = randoms[index].nextInt(MAX_NOOPS + 1);
+        for (int tick = 0; tick < noops; tick++) {
+            world.step(TICK_LENGTH, 0);
+        }
+
+        observe(index);
+    }
+
+    /**
+     * Write the observation of a game into the observations array.
+     *
+     * @param index index of the game
+     */
+    private void observe(int index) {
+        GameWorld world = worlds[index];
+        float[] out = observations;
+        int pos = index * observationSize;
+        float width = world.getWidth(), height = world.getHeight();
+
+        out[pos++] = world.getShip().getX() / width;
+        out[pos++] = world.canFire() ? 1 : 0;
+
+        for (AlienFormation formation : formations[index]) {
+            out[pos++] = (float) (formation.getX() / width);
+            out[pos++] = (float) (formation.getY() / height);
+            out[pos++] = (float) (formation.getHorizontalMovement() / 1000);
+
+            for (int row = 0; row < formation.getRows(); row++) {
+                for (int column = 0; column < formation.getColumns(); column++) {
+                    out[pos++] = formation.isOccupied(row, column) ? 1 : 0;
+                }
+            }
+        }
+
+        int end = pos + 2 * MAX_SHOTS;
+        EntityStore store = world.getEntityStore();
+        for (int i = 0; i < store.size && pos < end; i++) {
+            if (store.type[i] == Entity.TYPE_SHOT) {
+                out[pos++] = (float) (store.x[i] / width);
+                out[pos++] = (float) (store.y[i] / height);
+            }
+        }
+        while (pos < end) {
+            out[pos++] = 0;
+        }
+    }
+
+    /**
+     * Copy the observations into the direct buffer, if there is one.
+     */
+    private void publish() {
+        if (observationBuffer != null) {
+            observationBuffer.clear();
+            observationBuffer.put(observations);
+        }
+    }
+
+    /**
+     * Measure stepping speed with random actions.
+     *
+     * @param args [games] [seconds] [action repeat]
+     */
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 10;
+        int actionRepeat = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+        VectorEnv env = new VectorEnv(count, new GameConfig(), actionRepeat, true);
+        env.reset(0);
+
+        // draw the actions up front, so the loop measures just the games
+        SplittableRandom random = new SplittableRandom(1);
+        int[][] actionTable = new int[1024][count];
+        for (int[] actions : actionTable) {
+            for (int n = 0; n < count; n++) {
+                actions[n] = random.nextInt(ACTIONS);
+            }
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocations = threads instanceof com.sun.management.ThreadMXBean
+                ? (com.sun.management.ThreadMXBean) threads : null;
+        long thread = Thread.currentThread().getId();
+
+        // warm up, then measure
+        for (int n = 0; n < 2000; n++) {
+            env.step(actionTable[n & 1023]);
+        }
+        long allocatedBefore = allocations != null ? allocations.getThreadAllocatedBytes(thread) : 0;
+        long start = System.nanoTime(), end = start + (long) (seconds * 1e9), now = start;
+        long steps = 0, episodes = 0;
+        double totalReward = 0;
+        while (now < end) {
+            for (int n = 0; n < 256; n++) {
+                env.step(actionTable[(int) (steps++ & 1023)]);
+                for (int k = 0; k < count; k++) {
+                    totalReward += env.rewards[k];
+                    episodes += env.dones[k] ? 1 : 0;
+                }
+            }
+            now = System.nanoTime();
+        }
+        long allocated = allocations != null ? allocations.getThreadAllocatedBytes(thread) - allocatedBefore : -1;
+
+        double elapsed = (now - start) / 1e9;
+        System.out.printf("%d games x %d steps in %.1f s: %.0f environment steps/s (%.0f ticks/s),"
+                + " %d episodes, mean reward %.2f per episode, %d bytes allocated%n",
+                count, steps, elapsed, count * steps / elapsed, count * steps * actionRepeat / elapsed,
+                episodes, episodes > 0 ? totalReward / episodes : Double.NaN, allocated);
+    }
+}
@@ -0,0 +1,76 @@
+package spaceinvaders;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A reusable snapshot of the complete state of a GameWorld, held in a
+ * direct ByteBuffer.  Capturing copies the world into the buffer and
+ * restoring copies it back (see GameWorld.writeSnapshot()), so a game can
+ * be rewound, saved or branched off to try out alternatives.
+ *
+ * The buffer is only reallocated if the world grows beyond it, so once
+ * it has reached a steady size capturing and restoring allocate nothing.
+ *
+ * @author Tim Vaughan
+ */
+public class WorldSnapshot {
+
+    /**
+     * Buffer holding the snapshot between position 0 and its limit.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Create an empty snapshot.
+     */
+    public WorldSnapshot() {
+        buffer = ByteBuffer.allocateDirect(4096);
+        buffer.limit(0);
+    }
+
+    /**
+     * Capture the state of a world, replacing whatever was held before.
+     *
+     * @param world the world
+     */
+    public void capture(GameWorld world) {
+        int size = world.getSnapshotSize();
+        if (size > buffer.capacity()) {
+            buffer = ByteBuffer.allocateDirect(Math.max(size, 2 * buffer.capacity()));
+        }
+
+        buffer.clear();
+        world.writeSnapshot(buffer);
+        buffer.flip();
+    }
+
+    /**
+     * Return a world to the captured state.  The snapshot is unchanged,
+     * so it can be restored any number of times.
+     *
+     * @param world the world, which needn't be the one captured
+     * @throws IllegalArgumentException if nothing has been captured
+     */
+    public void restore(GameWorld world) {
+        buffer.rewind();
+        world.readSnapshot(buffer);
+    }
+
+    /**
+     * @return number of bytes in the snapshot
+     */
+    public int size() {
+        return buffer.limit();
+    }
+
+    /**
+     * Get the snapshot's bytes, e.g. to save them.  The returned buffer
+     * shares its content with this snapshot, so is only valid until the
+     * next capture.
+     *
+     * @return a read-only view of the snapshot
+     */
+    public ByteBuffer getBuffer() {
+        return buffer.asReadOnlyBuffer();
+    }
+}